@@ -0,0 +1,52 @@
+/******************************************************************************************************************
+* File:PipelineKernel.java
+* Project: Lab 1 benchmarks
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - SystemA's Plumber pipeline from end to end.
+*
+* Description:
+* This kernel runs SystemA's Plumber as "java Plumber out=<output dir> <input>" does (see Plumber.Run): the
+* pipeline the Plumber builds by default, each filter on its own thread, over the given input file and into the
+* given output directory, and waits for it to finish. The wiring is not copied here, so what is measured is
+* whatever the Plumber builds.
+* Parameters:
+* input:		The .dat file to process.
+* outputDir:	The directory OutputA.csv is written to.
+* Internal Methods:
+*	long applyAsLong(long runs)
+******************************************************************************************************************/
+
+import java.io.File;
+import java.util.function.LongUnaryOperator;
+
+public class PipelineKernel implements LongUnaryOperator
+{
+	private final String[] arguments;
+	private final String output;
+
+	public PipelineKernel(String input, String outputDir)
+	{
+		this.arguments = new String[] { "out=" + outputDir, input };
+		this.output = new File(outputDir, "OutputA.csv").getPath();
+	}
+
+	/**
+	 * Run the pipeline over the input the given number of times, one run after the other.
+	 *
+	 * @return the length of the last CSV file written.
+	 * @throws IllegalStateException if the Plumber reported a bad argument or a failed filter.
+	 */
+	public long applyAsLong(long runs)
+	{
+		for (long run = 0; run < runs; run++)
+		{
+			if (!Plumber.Run(arguments))
+			{
+				throw new IllegalStateException("Plumber failed: " + String.join(" ", arguments));
+			}
+		}
+		return new File(output).length();
+	}
+}
@@ -0,0 +1,76 @@
+/******************************************************************************************************************
+* File:DetectionKernel.java
+* Project: Lab 1 benchmarks
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - SystemB's MiddleFilter finding wild points.
+*
+* Description:
+* This kernel measures SystemB's MiddleFilter on its own: the measurements of an input file, read into memory
+* beforehand, are handed to a MiddleFilter's accept() one by one, and the filter checks the altitudes with the
+* given detector and passes everything on to a fused filter that only counts what it gets.
+* Parameters:
+* input:	The .dat file whose measurements are checked.
+* detector:	The detector, as in Plumber's "detector=" option (jump or ewma, with their parameters).
+* Internal Methods:
+*	long applyAsLong(long passes)
+******************************************************************************************************************/
+
+import java.io.IOException;
+import java.util.function.LongUnaryOperator;
+
+public class DetectionKernel implements LongUnaryOperator
+{
+	private final Measurements input;
+	private final String detector;
+
+	public DetectionKernel(String input, String detector) throws IOException
+	{
+		this.input = new Measurements(input);
+		this.detector = detector;
+	}
+
+	/**
+	 * Run every measurement of the input through a new MiddleFilter the given number of times.
+	 *
+	 * @return the number of measurements the MiddleFilter sent on.
+	 */
+	public long applyAsLong(long passes)
+	{
+		MiddleFilter middle = new MiddleFilter(CorrectionRegistry.altitude(Plumber.NewDetector(detector)),
+				WildPointBatch.DEFAULT_CAPACITY);
+		Counter counter = new Counter();
+		counter.ConnectFused(middle, new RingBufferConnector(8 * 1024));
+
+		middle.begin();
+		for (long pass = 0; pass < passes; pass++)
+		{
+			for (int i = 0; i < input.ids.length; i++)
+			{
+				middle.accept(input.ids[i], input.values[i]);
+			}
+		}
+		middle.end();
+		return counter.count;
+	}
+
+	/** The end of the pipeline: counts the measurements and drops them. */
+	private static final class Counter extends FilterFramework implements FusableFilter
+	{
+		long count = 0;
+
+		public void begin()
+		{
+		}
+
+		public void accept(int id, long value)
+		{
+			count++;
+		}
+
+		public void end()
+		{
+		}
+	}
+}
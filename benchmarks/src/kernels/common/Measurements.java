@@ -0,0 +1,38 @@
+/******************************************************************************************************************
+* File:Measurements.java
+* Project: Lab 1 benchmarks
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Measurements of a .dat file held in memory for the benchmark kernels.
+*
+* Description:
+* The kernels that call filters directly (rather than through a SourceFilter) read their input file once, when they
+* are made, into an ID array and a value array, so the benchmark measures the filters and not the file reading.
+* Parameters:
+* path:	The .dat file to read. A partial measurement at its end is dropped.
+* Internal Methods: None
+******************************************************************************************************************/
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+final class Measurements
+{
+	final int[] ids;
+	final long[] values;
+
+	Measurements(String path) throws IOException
+	{
+		byte[] data = Files.readAllBytes(Path.of(path));
+		int count = data.length / MeasurementCodec.RECORD_LENGTH;
+		ids = new int[count];
+		values = new long[count];
+		for (int i = 0; i < count; i++)
+		{
+			ids[i] = MeasurementCodec.decodeId(data, i * MeasurementCodec.RECORD_LENGTH);
+			values[i] = MeasurementCodec.decodeValue(data, i * MeasurementCodec.RECORD_LENGTH);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/******************************************************************************************************************
+* File:PipeHandoffKernel.java
+* Project: Lab 1 benchmarks
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Hand-off between two filters through the framework's ports.
+*
+* Description:
+* This kernel measures what it costs the framework to move data from one filter to the next. A writer filter on
+* its own thread writes the given number of bytes one at a time with WriteFilterOutputPort(byte), or the given
+* number of measurements with WriteMeasurement(); a reader filter on the calling thread reads them back with
+* ReadFilterInputPort() or ReadMeasurement() until the end of the stream. The two filters are joined by the
+* RingBufferConnector the Plumbers use.
+* Parameters:
+* unit:	"byte" or "measurement".
+* Internal Methods:
+*	long applyAsLong(long count)
+******************************************************************************************************************/
+
+import java.util.function.LongUnaryOperator;
+
+public class PipeHandoffKernel implements LongUnaryOperator
+{
+	private final boolean perMeasurement;
+
+	public PipeHandoffKernel(String unit)
+	{
+		if (!unit.equals("byte") && !unit.equals("measurement"))
+		{
+			throw new IllegalArgumentException("Unknown unit: " + unit);
+		}
+		perMeasurement = unit.equals("measurement");
+	}
+
+	/**
+	 * Move count bytes or measurements from a writer filter to a reader filter.
+	 *
+	 * @return the sum of what was read, so the work cannot be optimised away.
+	 */
+	public long applyAsLong(long count)
+	{
+		FilterFramework writer = new FilterFramework()
+		{
+			public void run()
+			{
+				for (long i = 0; i < count; i++)
+				{
+					if (perMeasurement)
+					{
+						WriteMeasurement((int) (i & 3), i);
+					}
+					else
+					{
+						WriteFilterOutputPort((byte) i);
+					}
+				}
+				ClosePorts();
+			}
+		};
+		FilterFramework reader = new FilterFramework();
+		reader.Connect(writer, new RingBufferConnector(64 * 1024));
+		writer.start();
+
+		long sum = 0;
+		try
+		{
+			while (true)
+			{
+				sum += perMeasurement ? reader.ReadMeasurement().value : reader.ReadFilterInputPort();
+			}
+		}
+		catch (FilterFramework.EndOfStreamException end)
+		{
+			// everything has been read
+		}
+		reader.ClosePorts();
+		try
+		{
+			writer.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,62 @@
+/******************************************************************************************************************
+* File:SinkFormatKernel.java
+* Project: Lab 1 benchmarks
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - SinkFilter turning measurements into CSV rows.
+*
+* Description:
+* This kernel measures SinkFilter on its own: the measurements of an input file, read into memory beforehand, are
+* handed to a SinkFilter's accept() one by one, as a fused upstream filter would, and the sink formats them into
+* CSV rows and writes them to the output file.
+* Parameters:
+* input:	The .dat file whose measurements are written.
+* output:	The CSV file the sink writes.
+* Internal Methods:
+*	long applyAsLong(long passes)
+******************************************************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.LongUnaryOperator;
+
+public class SinkFormatKernel implements LongUnaryOperator
+{
+	private final Measurements input;
+	private final String output;
+
+	public SinkFormatKernel(String input, String output) throws IOException
+	{
+		this.input = new Measurements(input);
+		this.output = output;
+	}
+
+	/**
+	 * @return the number of measurements in the input, which is the work done per pass.
+	 */
+	long measurements()
+	{
+		return input.ids.length;
+	}
+
+	/**
+	 * Write every measurement of the input through a new sink the given number of times.
+	 *
+	 * @return the length of the CSV file written.
+	 */
+	public long applyAsLong(long passes)
+	{
+		SinkFilter sink = new SinkFilter(output);
+		sink.begin();
+		for (long pass = 0; pass < passes; pass++)
+		{
+			for (int i = 0; i < input.ids.length; i++)
+			{
+				sink.accept(input.ids[i], input.values[i]);
+			}
+		}
+		sink.end();
+		return new File(output).length();
+	}
+}
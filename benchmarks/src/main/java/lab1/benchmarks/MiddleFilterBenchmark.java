@@ -0,0 +1,67 @@
+/******************************************************************************************************************
+* File:MiddleFilterBenchmark.java
+* Project: Lab 1 benchmarks
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Wild point detection in SystemB's MiddleFilter, per measurement.
+*
+* Description:
+* How long SystemB's MiddleFilter takes per measurement to check a flight's altitudes for wild points and pass the
+* measurements on, with each detector. The measurements are in memory and the filter runs fused, so no file, pipe
+* or thread is measured.
+******************************************************************************************************************/
+
+package lab1.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MiddleFilterBenchmark
+{
+	private static final int FRAMES = 100_000;
+	private static final int MEASUREMENTS = FRAMES * 5;
+
+	@Param({"jump", "ewma"})
+	public String detector;
+
+	private LongUnaryOperator detection;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		Path flight = SyntheticFlight.write(FRAMES);
+		detection = SystemClassLoader.kernel("B", "DetectionKernel", flight.toString(), detector);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MEASUREMENTS)
+	public long detect()
+	{
+		return detection.applyAsLong(1);
+	}
+}
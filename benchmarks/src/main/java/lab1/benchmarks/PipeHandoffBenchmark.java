@@ -0,0 +1,60 @@
+/******************************************************************************************************************
+* File:PipeHandoffBenchmark.java
+* Project: Lab 1 benchmarks
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Hand-off between filters, per byte and per measurement.
+*
+* Description:
+* How long it takes to move one byte (WriteFilterOutputPort / ReadFilterInputPort) or one measurement
+* (WriteMeasurement / ReadMeasurement) from one filter thread to the next through a ring buffer connector. The
+* framework is the same in both systems, so SystemB's is measured.
+******************************************************************************************************************/
+
+package lab1.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipeHandoffBenchmark
+{
+	private static final int COUNT = 1 << 20;
+
+	@Param({"byte", "measurement"})
+	public String unit;
+
+	private LongUnaryOperator handoff;
+
+	@Setup
+	public void setup()
+	{
+		handoff = SystemClassLoader.kernel("B", "PipeHandoffKernel", unit);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public long handoff()
+	{
+		return handoff.applyAsLong(COUNT);
+	}
+}
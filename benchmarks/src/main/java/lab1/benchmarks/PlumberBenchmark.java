@@ -0,0 +1,83 @@
+/******************************************************************************************************************
+* File:PlumberBenchmark.java
+* Project: Lab 1 benchmarks
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Each system's pipeline from end to end.
+*
+* Description:
+* How long each system's Plumber pipeline takes to turn a flight file into its CSV files, with a thread per filter
+* as Plumber runs it, for flights of several sizes. The kernel runs the Plumber itself (see PipelineKernel), so the
+* benchmark follows any change to how it builds the pipeline. The flights are written before the benchmark (see
+* SyntheticFlight) and the CSV files go to a temporary directory.
+******************************************************************************************************************/
+
+package lab1.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlumberBenchmark
+{
+	@Param({"A", "B"})
+	public String system;
+
+	@Param({"1000", "100000", "1000000"})
+	public int frames;
+
+	private Path outputDir;
+	private LongUnaryOperator pipeline;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		Path flight = SyntheticFlight.write(frames);
+		outputDir = Files.createTempDirectory("plumber" + system + "-");
+		pipeline = SystemClassLoader.kernel(system, "PipelineKernel", flight.toString(), outputDir.toString());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		try (var files = Files.list(outputDir))
+		{
+			for (Path file : (Iterable<Path>) files::iterator)
+			{
+				Files.delete(file);
+			}
+		}
+		Files.delete(outputDir);
+	}
+
+	@Benchmark
+	public long run()
+	{
+		return pipeline.applyAsLong(1);
+	}
+}
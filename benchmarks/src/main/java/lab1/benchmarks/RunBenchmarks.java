@@ -0,0 +1,44 @@
+/******************************************************************************************************************
+* File:RunBenchmarks.java
+* Project: Lab 1 benchmarks
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Runs the benchmarks and keeps the results as JSON.
+*
+* Description:
+* The main class of benchmarks.jar. It takes the usual JMH options (a benchmark name pattern, -p, -f, -wi, -i, ...)
+* and writes the results to jmh-result.json, unless -rf or -rff says otherwise, so a run can be kept as a baseline
+* and compared with a later one.
+*
+* Usage: java -jar benchmarks.jar [JMH options]
+******************************************************************************************************************/
+
+package lab1.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class RunBenchmarks
+{
+	public static void main(String[] argv) throws Exception
+	{
+		CommandLineOptions commandLine = new CommandLineOptions(argv);
+		if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+				|| commandLine.shouldListProfilers() || commandLine.shouldListResultFormats())
+		{
+			org.openjdk.jmh.Main.main(argv);
+			return;
+		}
+
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLine);
+		if (!commandLine.getResultFormat().hasValue())	// JMH then names the file jmh-result.json
+		{
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,69 @@
+/******************************************************************************************************************
+* File:SinkFilterBenchmark.java
+* Project: Lab 1 benchmarks
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - CSV formatting in the SinkFilters, per measurement.
+*
+* Description:
+* How long each system's SinkFilter takes per measurement to format a flight into CSV rows and write them to a
+* file. The measurements are in memory and handed to the sink directly, so no pipe or thread is measured.
+******************************************************************************************************************/
+
+package lab1.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SinkFilterBenchmark
+{
+	private static final int FRAMES = 100_000;
+	private static final int MEASUREMENTS = FRAMES * 5;
+
+	@Param({"A", "B"})
+	public String system;
+
+	private LongUnaryOperator format;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		Path flight = SyntheticFlight.write(FRAMES);
+		Path output = Files.createTempFile("Output" + system + "-", ".csv");
+		output.toFile().deleteOnExit();
+		format = SystemClassLoader.kernel(system, "SinkFormatKernel", flight.toString(), output.toString());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MEASUREMENTS)
+	public long format()
+	{
+		return format.applyAsLong(1);
+	}
+}
@@ -0,0 +1,79 @@
+/******************************************************************************************************************
+* File:SyntheticFlight.java
+* Project: Lab 1 benchmarks
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Flight data of any length for the benchmarks.
+*
+* Description:
+* The benchmarks run the filters over flights of several sizes, so this class writes a flight of the given number
+* of frames in the format of FlightData.dat: each frame is a time (ID 0, milliseconds since the epoch) followed by
+* velocity, altitude, pressure and temperature (IDs 1 to 4, doubles), every measurement a 4-byte ID and an 8-byte
+* value. The values follow random walks from a fixed seed, so a flight of a given size is the same every run, and
+* about one altitude in a hundred jumps by several hundred feet, so the wild point filters have work to do.
+* Parameters:
+* frames:	The number of frames.
+* Internal Methods:
+*	static Path write(int frames)
+******************************************************************************************************************/
+
+package lab1.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+final class SyntheticFlight
+{
+	private static final long SEED = 264;
+	private static final long START = 1_590_000_000_000L;	// May 2020
+	private static final long FRAME_MILLIS = 1000;
+
+	private SyntheticFlight()
+	{
+	}
+
+	/**
+	 * Write a flight of the given number of frames to a temporary file, which is deleted when the JVM exits.
+	 *
+	 * @return the file.
+	 */
+	static Path write(int frames) throws IOException
+	{
+		Path file = Files.createTempFile("flight-" + frames + "-", ".dat");
+		file.toFile().deleteOnExit();
+
+		SplittableRandom random = new SplittableRandom(SEED);
+		double velocity = 450;
+		double altitude = 30000;
+		double pressure = 50;
+		double temperature = -40;
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024)))
+		{
+			for (int frame = 0; frame < frames; frame++)
+			{
+				velocity += random.nextDouble(-2, 2);
+				altitude += random.nextDouble(-20, 20);
+				pressure += random.nextDouble(-0.1, 0.1);
+				temperature += random.nextDouble(-0.5, 0.5);
+				boolean wild = random.nextInt(100) == 0;
+
+				out.writeInt(0);
+				out.writeLong(START + frame * FRAME_MILLIS);
+				out.writeInt(1);
+				out.writeDouble(velocity);
+				out.writeInt(2);
+				out.writeDouble(wild ? altitude + random.nextDouble(300, 900) : altitude);
+				out.writeInt(3);
+				out.writeDouble(pressure);
+				out.writeInt(4);
+				out.writeDouble(temperature);
+			}
+		}
+		return file;
+	}
+}
@@ -0,0 +1,81 @@
+/******************************************************************************************************************
+* File:SystemClassLoader.java
+* Project: Lab 1 benchmarks
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - One class loader per system.
+*
+* Description:
+* SystemA and SystemB are both in the default package and have classes of the same names, so they are compiled into
+* systemA/ and systemB/ of the benchmark jar (see pom.xml) rather than onto the class path. This class loader loads
+* the classes of one system from its directory, so each benchmark can make the kernels of the system it measures.
+* Parameters:
+* system:	"A" or "B".
+* Internal Methods:
+*	static LongUnaryOperator kernel(String system, String name, String... args)
+******************************************************************************************************************/
+
+package lab1.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.function.LongUnaryOperator;
+
+final class SystemClassLoader extends ClassLoader
+{
+	static
+	{
+		registerAsParallelCapable();
+	}
+
+	private final String prefix;
+
+	SystemClassLoader(String system)
+	{
+		super("system" + system, SystemClassLoader.class.getClassLoader());
+		this.prefix = "system" + system + "/";
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException
+	{
+		try (InputStream in = getParent().getResourceAsStream(prefix + name.replace('.', '/') + ".class"))
+		{
+			if (in == null)
+			{
+				throw new ClassNotFoundException(name);
+			}
+			byte[] bytes = in.readAllBytes();
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+		catch (IOException e)
+		{
+			throw new ClassNotFoundException(name, e);
+		}
+	}
+
+	/**
+	 * Make a kernel of the given system: a class in src/kernels with a constructor that takes the given strings.
+	 */
+	static LongUnaryOperator kernel(String system, String name, String... args)
+	{
+		try
+		{
+			Class<?>[] types = new Class<?>[args.length];
+			Arrays.fill(types, String.class);
+			Class<?> kernel = Class.forName(name, true, new SystemClassLoader(system));
+			return (LongUnaryOperator) kernel.getConstructor(types).newInstance((Object[]) args);
+		}
+		catch (InvocationTargetException e)
+		{
+			throw new IllegalStateException("Cannot make " + name + " of System" + system, e.getCause());
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException("Cannot make " + name + " of System" + system, e);
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/******************************************************************************************************************
+* File:FlightGenerator.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Synthetic flight data of any size.
+*
+* Description:
+* This program writes a flight file in the format SourceFilter reads, of any size up to tens of GB, so both systems
+* can be run on far more than the 6000 bytes of FlightData.dat. Like FlightData.dat, a frame is a time (ID 0, a long
+* in milliseconds since the epoch) followed by velocity, altitude, pressure and temperature (IDs 1 to 4, doubles),
+* every measurement a 4-byte ID and an 8-byte value, big-endian.
+*
+* The flight climbs, cruises at 35000 feet if it is long enough and descends, with a little noise on every value;
+* velocity, pressure and temperature follow the altitude. Frames are 10 ms apart. On top of that:
+*	wild:		the share of altitudes that jump 300 to 2000 feet away from where they should be;
+*	missing:	the share of velocities, altitudes, pressures and temperatures left out of their frames;
+*	disorder:	the share of frames whose time is 10 to 80 ms earlier than it should be.
+*
+* The frames are generated in chunks of CHUNK_FRAMES on all the threads, and written to the file in order by the
+* main thread. Everything about a frame comes from its number and from a random generator of its chunk, seeded from
+* the seed and the chunk number, so the same arguments give the same file byte for byte, whatever the number of
+* threads.
+*
+* Usage: java FlightGenerator <output file> <size>[K|M|G] [seed=<n>] [wild=<share>] [missing=<share>]
+*			[disorder=<share>] [threads=<n>]
+*	The file has size / 60 frames, so it is as large as the size given unless fields are missing. The defaults are
+*	seed 264, wild 0.01, missing 0, disorder 0 and one thread per processor.
+* Internal Methods:
+*	static ByteBuffer generateChunk(long chunk)
+*	static long parseSize(String size)
+******************************************************************************************************************/
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class FlightGenerator
+{
+	static final int RECORD_LENGTH = 12;					// a 4-byte ID and an 8-byte value
+	static final int FRAME_LENGTH = RECORD_LENGTH * 5;		// time, velocity, altitude, pressure, temperature
+	static final int CHUNK_FRAMES = 16 * 1024;				// about 1 MB a chunk
+
+	private static final long START_TIME = 1578683965798L;	// the first time in FlightData.dat
+	private static final long FRAME_MILLIS = 10;
+	private static final double CRUISE_ALTITUDE = 35000;
+	private static final double CLIMB_PER_FRAME = 0.5;		// feet, well under the 100 a jump detector allows
+
+	private static long seed = 264;
+	private static double wild = 0.01;
+	private static double missing = 0;
+	private static double disorder = 0;
+	private static long frames;
+
+	public static void main(String[] argv) throws IOException, InterruptedException
+	{
+		if (argv.length < 2)
+		{
+			System.out.println("Usage: java FlightGenerator <output file> <size>[K|M|G] [seed=<n>] [wild=<share>]"
+					+ " [missing=<share>] [disorder=<share>] [threads=<n>]");
+			return;
+		}
+		Path output = Path.of(argv[0]);
+		frames = parseSize(argv[1]) / FRAME_LENGTH;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 2; i < argv.length; i++)
+		{
+			String arg = argv[i];
+			if (arg.startsWith("seed="))
+			{
+				seed = Long.parseLong(arg.substring("seed=".length()));
+			}
+			else if (arg.startsWith("wild="))
+			{
+				wild = Double.parseDouble(arg.substring("wild=".length()));
+			}
+			else if (arg.startsWith("missing="))
+			{
+				missing = Double.parseDouble(arg.substring("missing=".length()));
+			}
+			else if (arg.startsWith("disorder="))
+			{
+				disorder = Double.parseDouble(arg.substring("disorder=".length()));
+			}
+			else if (arg.startsWith("threads="))
+			{
+				threads = Integer.parseInt(arg.substring("threads=".length()));
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+
+		long chunks = (frames + CHUNK_FRAMES - 1) / CHUNK_FRAMES;
+		long started = System.nanoTime();
+		long bytes = 0;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			// A few chunks per thread are generated ahead of the one being written, and no more, so the memory
+			// used does not grow with the size of the file.
+			ArrayDeque<Future<ByteBuffer>> ahead = new ArrayDeque<>();
+			long next = 0;
+			while (next < chunks || !ahead.isEmpty())
+			{
+				while (next < chunks && ahead.size() < threads * 2)
+				{
+					long chunk = next++;
+					ahead.add(pool.submit(() -> generateChunk(chunk)));
+				}
+				ByteBuffer data = ahead.remove().get();
+				bytes += data.remaining();
+				while (data.hasRemaining())
+				{
+					out.write(data);
+				}
+			}
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Could not generate the flight", e.getCause());
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+
+		double seconds = (System.nanoTime() - started) / 1e9;
+		System.out.printf("%s: %d frames, %d bytes in %.2f s, %.1f MB/s%n", output, frames, bytes, seconds,
+				bytes / seconds / (1024 * 1024));
+	}
+
+	/**
+	 * Generate the frames of one chunk.
+	 *
+	 * @return the measurements of the chunk, ready to be written.
+	 */
+	static ByteBuffer generateChunk(long chunk)
+	{
+		SplittableRandom random = new SplittableRandom(chunkSeed(chunk));
+		long first = chunk * CHUNK_FRAMES;
+		long last = Math.min(first + CHUNK_FRAMES, frames);
+		ByteBuffer data = ByteBuffer.allocate((int) (last - first) * FRAME_LENGTH);
+
+		for (long frame = first; frame < last; frame++)
+		{
+			// climb at a steady rate, cruise, and descend at the same rate to land on the last frame
+			double altitude = Math.min(CRUISE_ALTITUDE, CLIMB_PER_FRAME * Math.min(frame, frames - 1 - frame));
+			double height = altitude / CRUISE_ALTITUDE;
+			double velocity = 250 + 230 * height + random.nextDouble(-5, 5);
+			double pressure = 100 * Math.exp(-altitude / 25000) + random.nextDouble(-0.5, 0.5);
+			double temperature = 59 - 0.00356 * altitude + random.nextDouble(-1, 1);
+			altitude += random.nextDouble(-10, 10);
+			if (random.nextDouble() < wild)
+			{
+				double jump = random.nextDouble(300, 2000);
+				altitude += random.nextBoolean() ? jump : -jump;
+			}
+			long time = START_TIME + frame * FRAME_MILLIS;
+			if (random.nextDouble() < disorder)
+			{
+				time -= FRAME_MILLIS * random.nextInt(1, 9);
+			}
+
+			data.putInt(0).putLong(time);
+			putField(data, random, 1, velocity);
+			putField(data, random, 2, altitude);
+			putField(data, random, 3, pressure);
+			putField(data, random, 4, temperature);
+		}
+		return data.flip();
+	}
+
+	/**
+	 * Put one measurement of a frame, unless it is one of the fields left out.
+	 */
+	private static void putField(ByteBuffer data, SplittableRandom random, int id, double value)
+	{
+		if (missing > 0 && random.nextDouble() < missing)
+		{
+			return;
+		}
+		data.putInt(id).putDouble(value);
+	}
+
+	/**
+	 * @return the seed of a chunk's random generator, mixed from the seed and the chunk number (the finalizer of
+	 * MurmurHash3) so that neighbouring chunks get unrelated values.
+	 */
+	private static long chunkSeed(long chunk)
+	{
+		long z = seed + (chunk + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return z ^ (z >>> 33);
+	}
+
+	/**
+	 * @return the number of bytes in a size such as 6000, 64K, 500M or 20G.
+	 */
+	static long parseSize(String size)
+	{
+		char unit = Character.toUpperCase(size.charAt(size.length() - 1));
+		int shift = unit == 'K' ? 10 : unit == 'M' ? 20 : unit == 'G' ? 30 : 0;
+		String digits = shift == 0 ? size : size.substring(0, size.length() - 1);
+		return Long.parseLong(digits) << shift;
+	}
+}
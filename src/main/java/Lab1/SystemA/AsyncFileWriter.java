@@ -0,0 +1,267 @@
+/******************************************************************************************************************
+* File:AsyncFileWriter.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Double-buffered file output written by a thread of its own.
+*
+* Description:
+* This output stream lets a sink write its CSV file without ever waiting on the disk itself. It has two buffers:
+* the sink fills one while a writer thread of this stream writes the other to the file through a FileChannel. When
+* the sink's buffer is full the two swap. The sink only waits when the disk is slower than the sink, so the writer
+* thread is still busy with the other buffer; with a disk that keeps up, all the sink does is copy bytes.
+*
+* How often the data is forced to the disk is a trade between throughput and how much is lost if the machine
+* crashes, and is chosen with the sync policy:
+*	NONE:			the data is only handed to the operating system, which writes it when it likes. This is what the
+*					FileWriter the sinks used did, and is the fastest.
+*	ON_CLOSE:		the file is forced to the disk once, when the stream is closed.
+*	EVERY_BUFFER:	the file is forced to the disk after every buffer. This costs a disk flush per buffer.
+* A buffer is normally only written when it is full. With a maximum delay, a buffer that has held data for longer
+* than that is handed to the writer thread at the next write even if it is not full, so a slow stream still
+* reaches the file within about that time.
+*
+* A write error on the writer thread is reported by the next write, flush or close of the stream.
+*
+* Parameters:
+* path:				The file to write. It is created, or truncated if it exists.
+* sync:				When the file is forced to the disk.
+* bufferLength:		The size of each of the two buffers in bytes.
+* maxDelayMillis:	How long data may wait in a buffer that is not full, or 0 to wait until it is full.
+******************************************************************************************************************/
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class AsyncFileWriter extends OutputStream
+{
+	enum Sync { NONE, ON_CLOSE, EVERY_BUFFER }
+
+	static final int DEFAULT_BUFFER_LENGTH = 64 * 1024;
+
+	// Handed to the writer thread after the last buffer to stop it.
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	// How long the sink waits for a free buffer before it checks again that the writer thread is alive.
+	private static final long WAIT_MILLIS = 10;
+
+	private final FileChannel channel;
+	private final Sync sync;
+	private final long maxDelayNanos;
+
+	// Buffers waiting to be written, and buffers written and ready to be filled again.
+	private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(3);
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(2);
+	private final Thread writer;
+	private volatile IOException failure = null;
+
+	// Only used by the thread writing to the stream.
+	private ByteBuffer current;
+	private long handedOff = System.nanoTime();
+	private boolean closed = false;
+	private final byte[] single = new byte[1];
+
+	AsyncFileWriter(Path path, Sync sync) throws IOException
+	{
+		this(path, sync, DEFAULT_BUFFER_LENGTH, 0);
+	}
+
+	AsyncFileWriter(Path path, Sync sync, int bufferLength, long maxDelayMillis) throws IOException
+	{
+		if (bufferLength <= 0)
+		{
+			throw new IllegalArgumentException("Buffer length must be positive: " + bufferLength);
+		}
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.sync = sync;
+		this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		this.current = ByteBuffer.allocate(bufferLength);
+		free.add(ByteBuffer.allocate(bufferLength));
+
+		writer = new Thread(this::writeBuffers, "AsyncFileWriter " + path.getFileName());
+		writer.start();
+	}
+
+	public void write(int b) throws IOException
+	{
+		single[0] = (byte) b;
+		write(single, 0, 1);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		checkOpen();
+		while (len > 0)
+		{
+			int count = Math.min(len, current.remaining());
+			current.put(b, off, count);
+			off += count;
+			len -= count;
+			if (!current.hasRemaining())
+			{
+				handOff();
+			}
+		}
+		if (maxDelayNanos > 0 && current.position() > 0 && System.nanoTime() - handedOff >= maxDelayNanos)
+		{
+			handOff();
+		}
+	}
+
+	/**
+	 * Hand what has been written so far to the writer thread. This does not wait for it to reach the file.
+	 */
+	public void flush() throws IOException
+	{
+		checkOpen();
+		if (current.position() > 0)
+		{
+			handOff();
+		}
+	}
+
+	/**
+	 * Write everything that is left, force it to the disk if the sync policy asks for it, and close the file.
+	 * This waits for the writer thread to finish.
+	 */
+	public void close() throws IOException
+	{
+		if (closed)
+		{
+			return;
+		}
+		closed = true;
+		try
+		{
+			// after a failed hand-off there is no buffer left to write, only the failure to report
+			if (current != null)
+			{
+				current.flip();
+				if (current.hasRemaining())
+				{
+					full.put(current);
+				}
+			}
+			full.put(END);
+			writer.join();
+			if (failure == null && sync == Sync.ON_CLOSE)
+			{
+				channel.force(false);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while closing the file");
+		}
+		finally
+		{
+			channel.close();
+		}
+		checkFailure();
+		if (current == null)
+		{
+			throw new IOException("File writer thread died");
+		}
+	}
+
+	/**
+	 * Give the filled buffer to the writer thread and take the other one, waiting until it has been written.
+	 */
+	private void handOff() throws IOException
+	{
+		try
+		{
+			current.flip();
+			full.put(current);
+			current = null;
+			while (current == null)
+			{
+				current = free.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+				if (current == null && !writer.isAlive())
+				{
+					checkFailure();
+					throw new IOException("File writer thread died");
+				}
+			}
+			current.clear();
+			handedOff = System.nanoTime();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing the file");
+		}
+		checkFailure();
+	}
+
+	private void checkOpen() throws IOException
+	{
+		if (closed)
+		{
+			throw new IOException("Stream closed");
+		}
+		checkFailure();
+	}
+
+	private void checkFailure() throws IOException
+	{
+		IOException error = failure;
+		if (error != null)
+		{
+			throw new IOException("Writing the file failed", error);
+		}
+	}
+
+	/**
+	 * The writer thread: write every buffer handed to it, in order, until the end marker. After a write error the
+	 * buffers are handed back unwritten, so the sink does not wait for them.
+	 */
+	private void writeBuffers()
+	{
+		try
+		{
+			while (true)
+			{
+				ByteBuffer buffer = full.take();
+				if (buffer == END)
+				{
+					return;
+				}
+				if (failure == null)
+				{
+					try
+					{
+						while (buffer.hasRemaining())
+						{
+							channel.write(buffer);
+						}
+						if (sync == Sync.EVERY_BUFFER)
+						{
+							channel.force(false);
+						}
+					}
+					catch (IOException e)
+					{
+						failure = e;
+					}
+				}
+				free.put(buffer);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			failure = new InterruptedIOException("File writer thread interrupted");
+		}
+	}
+}
@@ -0,0 +1,415 @@
+/******************************************************************************************************************
+* File:ColumnarFile.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Reads the columnar files of ColumnarSinkFilter.
+*
+* Description:
+* A columnar file (.col) holds the rows of a flight, one row per frame, as a column per field. The time and the
+* fields are each a column of 8-byte big-endian primitives (a long for the time, a double for the fields), and the
+* Flags column tells for each row which fields were missing from the frame (bit 32 + ID, and the value is NaN) and
+* which were corrected by the middle filter (bit ID). The rows are written in chunks of up to CHUNK_ROWS rows; a
+* chunk is every column's values for those rows, one column after the other:
+*	MAGIC VERSION | chunk 0: time, field, ..., flags | chunk 1: ... | footer | footer length | MAGIC
+* The footer is the schema (the name, type and measurement ID of every column) and, for every chunk and column,
+* where its values start, the number of rows, the number of values present and the smallest and largest of them
+* (NaN for a double column with none).
+*
+* This class reads the footer only. A column is loaded by mapping its values into memory, one chunk at a time, so
+* reading one field of a flight touches neither the other fields nor the Java heap; the chunk statistics can be used
+* to skip chunks altogether. Source writes the rows back into a pipeline as measurements.
+*
+* Usage: java ColumnarFile <file> [csv file]
+*	Prints the schema and the chunk statistics, or writes the rows as a CSV file in the format of SinkFilter.
+* Parameters:
+* path:	The columnar file.
+* Internal Methods:
+*	static ColumnarFile open(Path path)
+*	int columns(), String name(int column), int id(int column), boolean isDouble(int column), int column(String name)
+*	long rows(), int chunks(), int rows(int chunk), int present(int column, int chunk)
+*	long minLong(int column, int chunk), long maxLong(int column, int chunk)
+*	double minDouble(int column, int chunk), double maxDouble(int column, int chunk)
+*	LongBuffer longs(int column, int chunk), DoubleBuffer doubles(int column, int chunk)
+*	LongBuffer[] longColumn(String name), DoubleBuffer[] doubleColumn(String name)
+*	void close()
+******************************************************************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class ColumnarFile implements Closeable
+{
+	static final int MAGIC = 0x46434F4C;	// "FCOL"
+	static final int VERSION = 1;
+	static final int HEADER_LENGTH = 8;
+	static final int CHUNK_ROWS = 16384;
+	static final String SUFFIX = ".col";
+
+	static final byte LONG = 0;
+	static final byte DOUBLE = 1;
+	static final String FLAGS = "Flags";
+	static final int FLAGS_ID = -1;
+	static final int MISSING = 32;		// the Flags bit of a missing field is MISSING + its ID
+
+	private final FileChannel channel;
+	private final String[] names;
+	private final byte[] types;
+	private final int[] ids;
+	private final long[][] offsets;		// by column and chunk
+	private final int[] rows;			// by chunk
+	private final int[][] present;
+	private final long[][] min;			// the bits of a double for a double column
+	private final long[][] max;
+	private final long rowCount;
+
+	private ColumnarFile(FileChannel channel, DataInputStream footer) throws IOException
+	{
+		this.channel = channel;
+		int columns = footer.readInt();
+		names = new String[columns];
+		types = new byte[columns];
+		ids = new int[columns];
+		for (int column = 0; column < columns; column++)
+		{
+			names[column] = footer.readUTF();
+			types[column] = footer.readByte();
+			ids[column] = footer.readInt();
+		}
+
+		int chunks = footer.readInt();
+		offsets = new long[columns][chunks];
+		rows = new int[chunks];
+		present = new int[columns][chunks];
+		min = new long[columns][chunks];
+		max = new long[columns][chunks];
+		long total = 0;
+		for (int chunk = 0; chunk < chunks; chunk++)
+		{
+			for (int column = 0; column < columns; column++)
+			{
+				offsets[column][chunk] = footer.readLong();
+				rows[chunk] = footer.readInt();
+				present[column][chunk] = footer.readInt();
+				min[column][chunk] = footer.readLong();
+				max[column][chunk] = footer.readLong();
+			}
+			total += rows[chunk];
+		}
+		rowCount = total;
+	}
+
+	/**
+	 * Open a columnar file and read its footer.
+	 */
+	static ColumnarFile open(Path path) throws IOException
+	{
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try
+		{
+			long size = channel.size();
+			ByteBuffer tail = ByteBuffer.allocate(8);
+			if (size < HEADER_LENGTH + tail.capacity() || channel.read(tail, size - tail.capacity()) != tail.capacity()
+					|| tail.getInt(4) != MAGIC)
+			{
+				throw new IOException(path + " is not a columnar flight file");
+			}
+			int length = tail.getInt(0);
+			ByteBuffer footer = ByteBuffer.allocate(length);
+			channel.read(footer, size - tail.capacity() - length);
+			return new ColumnarFile(channel, new DataInputStream(new ByteArrayInputStream(footer.array())));
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	public static void main(String[] argv) throws IOException
+	{
+		if (argv.length < 1)
+		{
+			System.out.println("Usage: java ColumnarFile <file> [csv file]");
+			return;
+		}
+
+		if (argv.length > 1)
+		{
+			// the rows go through this system's own sink, so the CSV file is the one the Plumber writes
+			try (ColumnarFile file = open(Path.of(argv[0])))
+			{
+				Source source = new Source(file);
+				SinkFilter sink = new SinkFilter(argv[1], AsyncFileWriter.Sync.NONE, file.fields());
+				sink.ConnectFused(source, new RingBufferConnector(64 * 1024));
+				source.run();
+				if (source.Failure() != null || sink.Failure() != null)
+				{
+					System.exit(1);
+				}
+			}
+			return;
+		}
+
+		try (ColumnarFile file = open(Path.of(argv[0])))
+		{
+			System.out.println(argv[0] + ": " + file.rows() + " rows in " + file.chunks() + " chunks");
+			for (int column = 0; column < file.columns(); column++)
+			{
+				System.out.println("  " + file.name(column) + " (" + (file.isDouble(column) ? "double" : "long")
+						+ ", ID " + file.id(column) + ")");
+			}
+			for (int chunk = 0; chunk < file.chunks(); chunk++)
+			{
+				StringBuilder line = new StringBuilder("chunk " + chunk + ": " + file.rows(chunk) + " rows");
+				for (int column = 0; column < file.columns(); column++)
+				{
+					line.append("  ").append(file.name(column)).append(' ').append(file.present(column, chunk)).append(' ');
+					if (file.isDouble(column))
+					{
+						line.append(file.minDouble(column, chunk)).append("..").append(file.maxDouble(column, chunk));
+					}
+					else
+					{
+						line.append(file.minLong(column, chunk)).append("..").append(file.maxLong(column, chunk));
+					}
+				}
+				System.out.println(line);
+			}
+		}
+	}
+
+	int columns()
+	{
+		return names.length;
+	}
+
+	String name(int column)
+	{
+		return names[column];
+	}
+
+	/**
+	 * @return the measurement ID of the column, or FLAGS_ID for the Flags column.
+	 */
+	int id(int column)
+	{
+		return ids[column];
+	}
+
+	boolean isDouble(int column)
+	{
+		return types[column] == DOUBLE;
+	}
+
+	/**
+	 * @return the column with the given name, or -1 if there is none.
+	 */
+	int column(String name)
+	{
+		for (int column = 0; column < names.length; column++)
+		{
+			if (names[column].equals(name))
+			{
+				return column;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the set of measurement IDs with a column (see MeasurementCodec.idSet).
+	 */
+	long fields()
+	{
+		long fields = 0;
+		for (int id : ids)
+		{
+			if (id != FLAGS_ID)
+			{
+				fields |= MeasurementCodec.idSet(id);
+			}
+		}
+		return fields;
+	}
+
+	long rows()
+	{
+		return rowCount;
+	}
+
+	int chunks()
+	{
+		return rows.length;
+	}
+
+	int rows(int chunk)
+	{
+		return rows[chunk];
+	}
+
+	/**
+	 * @return the number of rows of the chunk in which the column's field was not missing.
+	 */
+	int present(int column, int chunk)
+	{
+		return present[column][chunk];
+	}
+
+	long minLong(int column, int chunk)
+	{
+		return min[column][chunk];
+	}
+
+	long maxLong(int column, int chunk)
+	{
+		return max[column][chunk];
+	}
+
+	double minDouble(int column, int chunk)
+	{
+		return Double.longBitsToDouble(min[column][chunk]);
+	}
+
+	double maxDouble(int column, int chunk)
+	{
+		return Double.longBitsToDouble(max[column][chunk]);
+	}
+
+	/**
+	 * @return the values of a long column in a chunk, mapped into memory.
+	 */
+	LongBuffer longs(int column, int chunk) throws IOException
+	{
+		return map(column, chunk).asLongBuffer();
+	}
+
+	/**
+	 * @return the values of a double column in a chunk, mapped into memory.
+	 */
+	DoubleBuffer doubles(int column, int chunk) throws IOException
+	{
+		return map(column, chunk).asDoubleBuffer();
+	}
+
+	/**
+	 * @return the values of the named long column, chunk by chunk, mapped into memory.
+	 */
+	LongBuffer[] longColumn(String name) throws IOException
+	{
+		int column = existing(name);
+		LongBuffer[] chunks = new LongBuffer[chunks()];
+		for (int chunk = 0; chunk < chunks.length; chunk++)
+		{
+			chunks[chunk] = longs(column, chunk);
+		}
+		return chunks;
+	}
+
+	/**
+	 * @return the values of the named double column, chunk by chunk, mapped into memory.
+	 */
+	DoubleBuffer[] doubleColumn(String name) throws IOException
+	{
+		int column = existing(name);
+		DoubleBuffer[] chunks = new DoubleBuffer[chunks()];
+		for (int chunk = 0; chunk < chunks.length; chunk++)
+		{
+			chunks[chunk] = doubles(column, chunk);
+		}
+		return chunks;
+	}
+
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	private int existing(String name)
+	{
+		int column = column(name);
+		if (column < 0)
+		{
+			throw new IllegalArgumentException("No column named " + name);
+		}
+		return column;
+	}
+
+	private ByteBuffer map(int column, int chunk) throws IOException
+	{
+		return channel.map(FileChannel.MapMode.READ_ONLY, offsets[column][chunk], (long) rows[chunk] * Long.BYTES);
+	}
+
+	/**
+	 * A source filter that writes the rows of a columnar file downstream as measurements, in the order of a frame:
+	 * the time and then the fields present, with the CORRECTED flag on the fields that were corrected.
+	 */
+	static final class Source extends FilterFramework
+	{
+		private final ColumnarFile file;
+
+		Source(ColumnarFile file)
+		{
+			this.file = file;
+		}
+
+		public void run()
+		{
+			int columns = file.columns();
+			int flagsColumn = file.column(FLAGS);
+			LongBuffer[] values = new LongBuffer[columns];
+			byte[] block = new byte[SourceFilter.BLOCK_LENGTH];
+			int blocklength = 0;
+			try
+			{
+				for (int chunk = 0; chunk < file.chunks(); chunk++)
+				{
+					for (int column = 0; column < columns; column++)
+					{
+						values[column] = file.longs(column, chunk);	// the bits of the doubles, as MeasurementCodec has them
+					}
+					for (int row = 0; row < file.rows(chunk); row++)
+					{
+						if (blocklength + columns * MeasurementCodec.RECORD_LENGTH > block.length)
+						{
+							WriteFilterOutputPort(block, 0, blocklength);
+							FlushFilterOutputPort();
+							blocklength = 0;
+						}
+						long flags = values[flagsColumn].get(row);
+						for (int column = 0; column < columns; column++)
+						{
+							int id = file.id(column);
+							if (id == FLAGS_ID || (id < MISSING && (flags & (1L << (MISSING + id))) != 0))
+							{
+								continue;
+							}
+							if (id < MISSING && (flags & (1L << id)) != 0)
+							{
+								id |= MeasurementCodec.CORRECTED;
+							}
+							MeasurementCodec.encode(block, blocklength, id, values[column].get(row));
+							blocklength += MeasurementCodec.RECORD_LENGTH;
+						}
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				Fail("Problem reading columnar file", e);
+			}
+			WriteFilterOutputPort(block, 0, blocklength);
+			FlushFilterOutputPort();
+			ClosePorts();
+		}
+	}
+}
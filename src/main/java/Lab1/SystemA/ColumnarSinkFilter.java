@@ -0,0 +1,254 @@
+/******************************************************************************************************************
+* File:ColumnarSinkFilter.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Writes the frames as columns of primitives instead of CSV rows.
+*
+* Description:
+* This sink is an alternative to SinkFilter: it writes the same rows, one per frame, to a columnar file (see
+* ColumnarFile) instead of formatting them as CSV text. The time and each field written are a column of 8-byte
+* primitives, and a Flags column keeps what the CSV file shows as an empty cell (a missing field) or a '*' (a
+* corrected value). The rows are kept in a chunk of ColumnarFile.CHUNK_ROWS rows per column; when it is full, each
+* column is written with the count, min and max of its values, so the memory used does not grow with the flight.
+* The footer, with the schema and the statistics of every chunk, is written at the end of the stream. A CSV file
+* can be made from the columnar file when it is wanted with "java ColumnarFile <file> <csv file>".
+*
+* Like SinkFilter, the filter ignores the original value of a wild measurement, writes the columns of the given
+* fields only and reads only their measurements (see ConsumedIds). A field that appears twice in a frame keeps the
+* last value.
+* Parameters:
+* outputPath:	The columnar file to write.
+* sync:		When the file is forced to the disk by the AsyncFileWriter that writes it.
+* fields:		The set of IDs whose columns are written, as in SinkFilter.
+* Internal Methods:
+*	void endRow()
+*	void writeChunk()
+*	void writeFooter()
+******************************************************************************************************************/
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class ColumnarSinkFilter extends FilterFramework implements FusableFilter
+{
+	private final String outputPath;	// Columnar output file.
+	private final AsyncFileWriter.Sync sync;
+	private final long fields;			// IDs whose columns are written, as in SinkFilter
+	private final int[] ids;			// the measurement ID of every column but Flags, the last one
+	private final int[] columnOf = new int[SinkFilter.COLUMNS.length];	// the column of an ID, -1 if it has none
+
+	private long bytesread = 0;			// This is the number of bytes read from the stream
+	private OutputStream output = null;
+	private long offset = 0;			// bytes written to the file
+	private final long[][] chunk;		// the rows not yet written, by column; doubles as their bits
+	private int rows = 0;				// rows in the chunk
+	private boolean inRow = false;		// a row is being filled
+	private long flags;					// the Flags of the row being filled
+	private final ByteBuffer staging = ByteBuffer.allocate(ColumnarFile.CHUNK_ROWS * Long.BYTES);
+	private final ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+	private final DataOutputStream footer = new DataOutputStream(footerBytes);
+	private int chunks = 0;
+
+	public ColumnarSinkFilter(String outputPath, AsyncFileWriter.Sync sync, long fields)
+	{
+		this.outputPath = outputPath;
+		this.sync = sync;
+		this.fields = (fields & SinkFilter.ALL_COLUMNS) | MeasurementCodec.idSet(0);
+		this.ids = new int[Long.bitCount(this.fields)];
+		Arrays.fill(columnOf, -1);
+		int column = 0;
+		for (int id = 0; id < SinkFilter.COLUMNS.length; id++)
+		{
+			if (MeasurementCodec.contains(this.fields, id))
+			{
+				columnOf[id] = column;
+				ids[column++] = id;
+			}
+		}
+		this.chunk = new long[ids.length + 1][ColumnarFile.CHUNK_ROWS];
+	}
+
+	// A sink reads the measurements of the columns it writes.
+	long ConsumedIds(long downstream)
+	{
+		return fields;
+	}
+
+	public void run()
+	{
+		RunFusable();
+	}
+
+	public void begin()
+	{
+		try {
+			if (Files.exists(Path.of(outputPath))) {
+				Files.delete(Path.of(outputPath));
+			}
+
+			output = new AsyncFileWriter(Path.of(outputPath), sync);
+			staging.clear();
+			staging.putInt(ColumnarFile.MAGIC).putInt(ColumnarFile.VERSION);
+			output.write(staging.array(), 0, ColumnarFile.HEADER_LENGTH);
+			offset = ColumnarFile.HEADER_LENGTH;
+		} catch (IOException e) {
+			Fail("Problem opening " + outputPath, e);
+			output = OutputStream.nullOutputStream();	// the rest of the stream is read and dropped
+		}
+
+		// First we announce to the world that we are alive...
+		System.out.print( "\n" + this.getName() + "::Columnar Sink Reading ");
+	}
+
+	public void accept(int id, long val)
+	{
+		bytesread += MeasurementCodec.RECORD_LENGTH;
+
+		// the original value of a wild measurement is not written, the updated one is flagged
+		if ((id & MeasurementCodec.ORIGINAL) != 0) {
+			return;
+		}
+		boolean corrected = (id & MeasurementCodec.CORRECTED) != 0;
+		id = MeasurementCodec.field(id);
+
+		// a time stamp starts a new row
+		if (id == 0 && inRow) {
+			endRow();
+		}
+		if (id < 0 || id >= columnOf.length || columnOf[id] < 0) {
+			return;
+		}
+		if (!inRow) {
+			// every field is missing until it is read
+			for (int column = 0; column < ids.length; column++) {
+				chunk[column][rows] = column == 0 ? 0 : Double.doubleToLongBits(Double.NaN);
+				flags |= 1L << (ColumnarFile.MISSING + ids[column]);
+			}
+			inRow = true;
+		}
+		chunk[columnOf[id]][rows] = val;
+		flags &= ~(1L << (ColumnarFile.MISSING + id));
+		if (corrected) {
+			flags |= 1L << id;
+		}
+	}
+
+	public void end()
+	{
+		if (inRow) {
+			endRow();
+		}
+		writeChunk();
+		writeFooter();
+
+		ClosePorts();
+		System.out.print( "\n" + this.getName() + "::Columnar Sink Exiting; bytes read: " + bytesread + " bytes written: " + offset );
+
+		try {
+			output.close();
+		} catch (IOException e) {
+			Fail("Problem writing " + outputPath, e);
+		}
+	}
+
+	// This ends the row being filled and writes the chunk once it is full.
+	private void endRow()
+	{
+		chunk[ids.length][rows] = flags;
+		flags = 0;
+		inRow = false;
+		if (++rows == ColumnarFile.CHUNK_ROWS) {
+			writeChunk();
+		}
+	}
+
+	// This writes every column of the chunk, if it holds a row, and its statistics to the footer.
+	private void writeChunk()
+	{
+		if (rows == 0) {
+			return;
+		}
+		try {
+			for (int column = 0; column < chunk.length; column++) {
+				long[] values = chunk[column];
+				boolean isDouble = column > 0 && column < ids.length;
+				long missing = column < ids.length ? 1L << (ColumnarFile.MISSING + ids[column]) : 0;
+				int present = 0;
+				long min = 0;
+				long max = 0;
+				double smallest = Double.NaN;	// NaN values are left out of a double column's min and max
+				double largest = Double.NaN;
+				for (int row = 0; row < rows; row++) {
+					if ((chunk[ids.length][row] & missing) != 0) {
+						continue;
+					}
+					if (isDouble) {
+						double value = Double.longBitsToDouble(values[row]);
+						smallest = !(value >= smallest) && !Double.isNaN(value) ? value : smallest;
+						largest = !(value <= largest) && !Double.isNaN(value) ? value : largest;
+					} else {
+						min = present == 0 ? values[row] : Math.min(min, values[row]);
+						max = present == 0 ? values[row] : Math.max(max, values[row]);
+					}
+					present++;
+				}
+				if (isDouble) {
+					min = Double.doubleToLongBits(smallest);
+					max = Double.doubleToLongBits(largest);
+				}
+
+				footer.writeLong(offset);
+				footer.writeInt(rows);
+				footer.writeInt(present);
+				footer.writeLong(min);
+				footer.writeLong(max);
+
+				staging.clear();
+				staging.asLongBuffer().put(values, 0, rows);
+				output.write(staging.array(), 0, rows * Long.BYTES);
+				offset += (long) rows * Long.BYTES;
+			}
+		} catch (IOException e) {
+			Fail("Problem writing " + outputPath, e);
+		}
+		chunks++;
+		rows = 0;
+	}
+
+	// This writes the schema and the chunk statistics, then their length and the magic number.
+	private void writeFooter()
+	{
+		try {
+			ByteArrayOutputStream schemaBytes = new ByteArrayOutputStream();
+			DataOutputStream schema = new DataOutputStream(schemaBytes);
+			schema.writeInt(ids.length + 1);
+			for (int column = 0; column < ids.length; column++) {
+				schema.writeUTF(SinkFilter.COLUMNS[ids[column]]);
+				schema.writeByte(column == 0 ? ColumnarFile.LONG : ColumnarFile.DOUBLE);
+				schema.writeInt(ids[column]);
+			}
+			schema.writeUTF(ColumnarFile.FLAGS);
+			schema.writeByte(ColumnarFile.LONG);
+			schema.writeInt(ColumnarFile.FLAGS_ID);
+			schema.writeInt(chunks);
+
+			int length = schemaBytes.size() + footerBytes.size();
+			schemaBytes.writeTo(output);
+			footerBytes.writeTo(output);
+			staging.clear();
+			staging.putInt(length).putInt(ColumnarFile.MAGIC);
+			output.write(staging.array(), 0, 8);
+			offset += length + 8;
+		} catch (IOException e) {
+			Fail("Problem writing " + outputPath, e);
+		}
+	}
+}
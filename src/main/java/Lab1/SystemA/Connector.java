@@ -0,0 +1,35 @@
+/******************************************************************************************************************
+* File:Connector.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Pluggable connections between filters.
+*
+* Description:
+* A connector is the pipe between two filters: the upstream filter writes on the connector's output port and the
+* downstream filter reads from its input port. FilterFramework.Connect() takes a connector, so the Plumber can choose
+* the kind of pipe for every edge of the network. Every connector carries a plain byte stream with the same
+* semantics as java pipes: reads block until data arrives, and return -1 once the writer has closed its port and
+* all data has been read. Every connector also reports how full it is, so the plumber can see where data backs up.
+*
+* Internal Methods:
+*	InputStream inputPort() - the end the downstream filter reads from.
+*	OutputStream outputPort() - the end the upstream filter writes to.
+*	int capacity() - the number of bytes the connector holds before the upstream filter has to wait.
+*	long occupancy() - the number of bytes written to the connector that have not been read yet.
+******************************************************************************************************************/
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+interface Connector
+{
+	InputStream inputPort();
+
+	OutputStream outputPort();
+
+	int capacity();
+
+	long occupancy();
+}
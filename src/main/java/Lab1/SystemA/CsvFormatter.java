@@ -0,0 +1,316 @@
+/******************************************************************************************************************
+* File:CsvFormatter.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Allocation free formatting of CSV rows.
+*
+* Description:
+* The sinks used to format every value with DecimalFormat("0.00000") rounding DOWN, and every time stamp with
+* SimpleDateFormat("yyyy MM dd::hh:mm:ss") or ("yyyy MM dd::hh:mm:ss:SSS") on Calendar.getTime(). Both allocate
+* (a Date, strings, digit lists) for every measurement and were most of the sinks' work. This class writes exactly
+* the same text as those formats, as ASCII bytes, straight into a byte buffer that is reused for every row.
+*
+* The text does not depend on the default locale: it is what those formats write in Locale.ROOT, with ASCII digits,
+* '.' as the decimal separator, '-' as the minus sign and years of the Gregorian calendar. The fast paths, the kept
+* "yyyy MM dd::hh:mm:ss" part below and the DecimalFormat and SimpleDateFormat they fall back to all write it so.
+* The sinks used to follow the default locale instead (249,14956 under de_DE, years of the Buddhist calendar under
+* th_TH); a CSV file now reads the same wherever it was written.
+*
+* Values are truncated to five decimals. DecimalFormat truncates the shortest decimal that reads back as the double
+* (the digits of Double.toString), not the exact binary value, and the two differ when a multiple of 0.00001 lies
+* within rounding distance of the double. The fast path multiplies by 100000 and takes the integer part, which is
+* right whenever the product is clearly away from an integer; the rare values that are not, and values too large
+* for a long, NaN and infinities, are formatted with DecimalFormat itself.
+*
+* Time stamps are split into fields with integer arithmetic on the local time given by the default time zone, the
+* zone SimpleDateFormat uses. Dates before 1600 (the Julian calendar was in use before 1582) and after 9999 are
+* formatted with SimpleDateFormat itself. Many frames fall in the same second, so the "yyyy MM dd::hh:mm:ss" part is
+* kept for the last local second formatted and copied as it is while the time stamps stay in that second. When the
+* second changes, only the fields that changed are written again: the seconds, the hours and minutes when the minute
+* changes, and the date when the day changes. The cache is keyed by the local time, after the zone's offset for the
+* instant itself, so a time stamp on the other side of a daylight saving change never reuses the text of the last.
+*
+* Parameters:
+* milliseconds:	true to add ":SSS" to the time stamps.
+*
+* Internal Methods:
+*	void reset()
+*	void appendTime(long millis)
+*	void appendValue(double value)
+*	void append(char c)
+*	void append(String s)
+*	int length()
+*	void writeTo(OutputStream out)
+******************************************************************************************************************/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+final class CsvFormatter
+{
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+	private static final long SCALE = 100000;	// five decimals
+	private static final double MAX_FAST_VALUE = 1e12;
+	private static final int MIN_FAST_YEAR = 1600;
+	private static final int MAX_FAST_YEAR = 9999;
+
+	private final boolean milliseconds;
+	private final TimeZone zone = TimeZone.getDefault();
+
+	// Used only for the values and time stamps the fast paths leave alone; in Locale.ROOT, like the fast paths.
+	private final DecimalFormat slowValueFormat =
+			new DecimalFormat("0.00000", DecimalFormatSymbols.getInstance(Locale.ROOT));
+	private final SimpleDateFormat slowTimeFormat;
+
+	private byte[] buffer = new byte[128];
+	private int length = 0;
+
+	// "yyyy MM dd::hh:mm:ss" of the last local second formatted, and the day and minute it was written for.
+	private static final int PREFIX_LENGTH = 20;
+	private final byte[] prefix = "0000 00 00::00:00:00".getBytes();
+	private long prefixDay = Long.MIN_VALUE;
+	private long prefixMinute = Long.MIN_VALUE;
+	private long prefixSecond = Long.MIN_VALUE;
+
+	CsvFormatter(boolean milliseconds)
+	{
+		this.milliseconds = milliseconds;
+		slowValueFormat.setRoundingMode(RoundingMode.DOWN);
+		slowTimeFormat = new SimpleDateFormat(milliseconds ? "yyyy MM dd::hh:mm:ss:SSS" : "yyyy MM dd::hh:mm:ss",
+				Locale.ROOT);
+		slowTimeFormat.setCalendar(new GregorianCalendar(zone, Locale.ROOT));
+	}
+
+	/**
+	 * Empty the buffer to start the next row.
+	 */
+	void reset()
+	{
+		length = 0;
+	}
+
+	/**
+	 * @return the number of bytes in the buffer.
+	 */
+	int length()
+	{
+		return length;
+	}
+
+	/**
+	 * Write the buffer to the stream. The buffer is not emptied.
+	 */
+	void writeTo(OutputStream out) throws IOException
+	{
+		out.write(buffer, 0, length);
+	}
+
+	void append(char c)
+	{
+		ensure(1);
+		buffer[length++] = (byte) c;
+	}
+
+	/**
+	 * Append an ASCII string, such as a separator.
+	 */
+	void append(String s)
+	{
+		ensure(s.length());
+		for (int i = 0; i < s.length(); i++)
+		{
+			buffer[length++] = (byte) s.charAt(i);
+		}
+	}
+
+	/**
+	 * Append a time stamp as SimpleDateFormat("yyyy MM dd::hh:mm:ss[:SSS]") formats it.
+	 */
+	void appendTime(long millis)
+	{
+		long local = millis + zone.getOffset(millis);
+		long second = Math.floorDiv(local, 1000);
+		if (second != prefixSecond && !updatePrefix(local, second))
+		{
+			appendSlow(slowTimeFormat.format(new Date(millis)));
+			return;
+		}
+
+		ensure(PREFIX_LENGTH + 4);
+		System.arraycopy(prefix, 0, buffer, length, PREFIX_LENGTH);
+		length += PREFIX_LENGTH;
+		if (milliseconds)
+		{
+			buffer[length++] = ':';
+			appendDigits(Math.floorMod(local, 1000), 3);
+		}
+	}
+
+	/**
+	 * Write the fields of the cached prefix that differ for the given local second.
+	 *
+	 * @return false if the date is outside the years the fast path formats; the cache is then empty.
+	 */
+	private boolean updatePrefix(long local, long second)
+	{
+		long days = Math.floorDiv(local, MILLIS_PER_DAY);
+		if (days != prefixDay && !updateDate(days))
+		{
+			prefixDay = Long.MIN_VALUE;
+			prefixMinute = Long.MIN_VALUE;
+			prefixSecond = Long.MIN_VALUE;
+			return false;
+		}
+
+		int millisOfDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+		long minute = Math.floorDiv(second, 60);
+		if (minute != prefixMinute)
+		{
+			int hour = millisOfDay / 3600000;
+			int hour12 = hour % 12 == 0 ? 12 : hour % 12;
+			putDigits(prefix, 12, hour12, 2);
+			putDigits(prefix, 15, millisOfDay / 60000 % 60, 2);
+			prefixMinute = minute;
+		}
+		putDigits(prefix, 18, millisOfDay / 1000 % 60, 2);
+		prefixSecond = second;
+		return true;
+	}
+
+	/**
+	 * Write the "yyyy MM dd" of the cached prefix for the given local day.
+	 *
+	 * @return false if the year is outside the years the fast path formats.
+	 */
+	private boolean updateDate(long days)
+	{
+		// Civil date from days since 1970-01-01 in the proleptic Gregorian calendar.
+		long z = days + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long monthIndex = (5 * dayOfYear + 2) / 153;
+		int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+		int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		if (year < MIN_FAST_YEAR || year > MAX_FAST_YEAR)
+		{
+			return false;
+		}
+
+		putDigits(prefix, 0, (int) year, 4);
+		putDigits(prefix, 5, month, 2);
+		putDigits(prefix, 8, day, 2);
+		prefixDay = days;
+		prefixMinute = Long.MIN_VALUE;	// the hours and minutes are written again as well
+		return true;
+	}
+
+	/**
+	 * Append a value as DecimalFormat("0.00000") with RoundingMode.DOWN formats it.
+	 */
+	void appendValue(double value)
+	{
+		double magnitude = Math.abs(value);
+		if (!(magnitude < MAX_FAST_VALUE))
+		{
+			appendSlow(slowValueFormat.format(value));	// too large, NaN or infinite
+			return;
+		}
+
+		double scaled = magnitude * SCALE;
+		long units = (long) scaled;
+		double fraction = scaled - units;
+		// The product is off from the exact one by at most half an ulp, and the decimal DecimalFormat truncates is
+		// off from the double by about as much again; closer than that to an integer, the fast path could be wrong.
+		double margin = 4 * Math.ulp(scaled);
+		if (fraction <= margin || fraction >= 1 - margin)
+		{
+			appendSlow(slowValueFormat.format(value));
+			return;
+		}
+
+		ensure(32);
+		if (Double.doubleToRawLongBits(value) < 0)
+		{
+			buffer[length++] = '-';	// DecimalFormat keeps the sign of negative values that truncate to zero
+		}
+		appendNumber(units / SCALE);
+		buffer[length++] = '.';
+		appendDigits((int) (units % SCALE), 5);
+	}
+
+	/**
+	 * Append text from the slow paths in the default charset, as the FileWriter the sinks used wrote it. It is not
+	 * always ASCII: DecimalFormat writes infinity as the symbol of Locale.ROOT.
+	 */
+	private void appendSlow(String text)
+	{
+		byte[] bytes = text.getBytes();
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, buffer, length, bytes.length);
+		length += bytes.length;
+	}
+
+	/**
+	 * Append a non-negative number without leading zeros.
+	 */
+	private void appendNumber(long number)
+	{
+		int digits = 1;
+		for (long rest = number / 10; rest > 0; rest /= 10)
+		{
+			digits++;
+		}
+		int end = length + digits;
+		for (int i = end - 1; i >= length; i--)
+		{
+			buffer[i] = (byte) ('0' + number % 10);
+			number /= 10;
+		}
+		length = end;
+	}
+
+	/**
+	 * Append a non-negative number with leading zeros to the given number of digits. Numbers with more digits are
+	 * appended whole, as "yyyy" does for years after 9999.
+	 */
+	private void appendDigits(int number, int digits)
+	{
+		putDigits(buffer, length, number, digits);
+		length += digits;
+	}
+
+	/**
+	 * Write a non-negative number below 10 to the power digits with leading zeros at target[at].
+	 */
+	private static void putDigits(byte[] target, int at, int number, int digits)
+	{
+		for (int i = at + digits - 1; i >= at; i--)
+		{
+			target[i] = (byte) ('0' + number % 10);
+			number /= 10;
+		}
+	}
+
+	private void ensure(int more)
+	{
+		if (length + more > buffer.length)
+		{
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + more));
+		}
+	}
+}
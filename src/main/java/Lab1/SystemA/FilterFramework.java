@@ -12,31 +12,64 @@
 * This superclass defines a skeletal filter framework that defines a filter in terms of the input and output
 * ports. All filters must be defined in terms of this framework - that is, filters must extend this class
 * in order to be considered valid system filters. Filters as standalone threads until the inputport no longer
-* has any data - at which point the filter finishes up any work it has to do and then terminates.
+* has any data - at which point the filter finishes up any work it has to do and then terminates. Instead of
+* being started as its own platform thread, a filter can also be started as a task on an executor, for example
+* one that runs every task on a virtual thread, without any change to the filter itself. Filters that implement
+* FusableFilter can also be fused onto the filter upstream of them, in which case they do not get a thread at all:
+* the upstream filter hands them each measurement by calling them directly.
 *
 * Parameters:
 * InputReadPort:	This is the filter's input port. Essentially this port is connected to another filter's piped
 *					output steam. All filters connect to other filters by connecting their input ports to other
-*					filter's output ports. This is handled by the Connect() method.*
+*					filter's output ports. This is handled by the Connect() method, which takes the Connector
+*					(java pipe, ring buffer, ...) to use for the connection.*
 * OutputWritePort:	This the filter's output port. Essentially the filter's job is to read data from the input port,
 *					perform some operation on the data, then write the transformed data on the output port.*
 * FilterFramework:  This is a reference to the filter that is connected to the instance filter's input port. This
 *					reference is to determine when the upstream filter has stopped sending data along the pipe.*
 * Internal Methods:
 *	public void Connect( FilterFramework Filter )
+*	public void Connect( FilterFramework Filter, Connector Pipe )
+*	public InputStream ConnectInputPort( FilterFramework Filter, Connector Pipe )
+*	public void ConnectFused( FilterFramework Filter, Connector Pipe )
+*	public boolean IsFused()
+*	public long ConsumedIds( long Downstream )
 *	public byte ReadFilterInputPort()
+*	public int ReadFilterInputPort(byte[] buf, int off, int len)
 *	public void WriteFilterOutputPort(byte datum)
+*	public void WriteFilterOutputPort(byte[] buf, int off, int len)
+*	public void FlushFilterOutputPort()
+*	public void BeforeWaiting()
+*	public Measurement ReadMeasurement()
+*	public void WriteMeasurement(int id, long value)
+*	public void RunFusable()
+*	public void Start( Executor Runner )
+*	public boolean IsRunning()
+*	public void AwaitCompletion()
+*	public void Fail( String What, Exception Error )
+*	public Exception Failure()
+*	public static ExecutorService VirtualThreadExecutor()
 *	public boolean EndOfInputStream()*
 ******************************************************************************************************************/
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class FilterFramework extends Thread
 {
-	// Define filter input and output ports
-	private PipedInputStream InputReadPort = new PipedInputStream();
-	private PipedOutputStream OutputWritePort = new PipedOutputStream();
+	// Define filter input and output ports. They are replaced by the ends of a Connector when the
+	// filter is connected; a source's input port and a sink's output port are never connected.
+	private InputStream InputReadPort = new PipedInputStream();
+	private OutputStream OutputWritePort = new PipedOutputStream();
 
 	// The following reference to a filter is used because java pipes are able to reliably
 	// detect broken pipes on the input port of the filter. This variable will point to
@@ -44,6 +77,42 @@ public class FilterFramework extends Thread
 	// output pipe and will send no more data.
 	private FilterFramework InputFilter;
 
+	// True when blocks have been written on the output port since it was last flushed.
+	private boolean OutputPending = false;
+
+	// Buffers behind ReadMeasurement() and WriteMeasurement(). The input buffer holds bytes read from the input
+	// port that have not been handed to the filter yet (InputStart up to InputEnd); the output buffer holds
+	// encoded measurements that have not been written on the output port yet. Both hold whole measurements so
+	// the byte and block methods drain them first to keep the stream in order.
+	private byte[] InputBuffer = new byte[MeasurementCodec.RECORD_LENGTH * 341];
+	private int InputStart = 0;
+	private int InputEnd = 0;
+	private byte[] OutputBuffer = new byte[MeasurementCodec.RECORD_LENGTH * 341];
+	private int OutputLength = 0;
+	private final Measurement CurrentMeasurement = new Measurement();
+
+	// Used instead of the filter's own thread state when the filter runs as a task on an executor.
+	private volatile boolean TaskRunning = false;
+	private CountDownLatch TaskFinished = null;
+
+	// True once a downstream filter has been connected to the output port through a connector.
+	private boolean OutputConnected = false;
+
+	// When filters downstream are fused onto this one (see ConnectFused()), everything written on the output
+	// port goes straight to those filters instead. Bytes written on the port are put back together into whole
+	// measurements first, FusedPartial holding the start of a measurement that was split between two writes.
+	private FusableFilter[] FusedOutputs = null;
+	private boolean FusedOutputBegun = false;
+	private byte[] FusedPartial = null;
+	private int FusedPartialLength = 0;
+	private final byte[] FusedByte = new byte[1];
+
+	// True when this filter is fused onto the filter upstream and so must not be started.
+	private boolean Fused = false;
+
+	// The first thing that went wrong in this filter (see Fail()), or null.
+	private volatile Exception Failure = null;
+
 	class EndOfStreamException extends Exception {
 
 		EndOfStreamException () { super(); }
@@ -59,80 +128,234 @@ public class FilterFramework extends Thread
 	* Arguments:
 	* FilterFramework - this is the filter that this filter will connect to.
 	* Returns: void
-	* Exceptions: IOException
+	* Exceptions: none
 	****************************************************************************/
 	void Connect( FilterFramework Filter )
 	{
-		try
+		Connect( Filter, new PipeConnector() );
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: Connect
+	* Purpose: This method connects this filter's input port to the output port
+	* of the upstream filter through the given connector. This lets the plumber
+	* pick the kind of pipe used for each connection in the network.
+	*
+	* Arguments:
+	* FilterFramework - this is the filter that this filter will connect to.
+	* Connector - this is the pipe that joins the two filters. It must not be
+	* used for any other connection. Several filters can be connected to the
+	* same upstream filter through the branches of one TeeConnector, which
+	* share the upstream filter's output port.
+	* Returns: void
+	* Exceptions: IllegalStateException if the upstream filter's output port
+	*			  is already connected elsewhere, through another connector or
+	*			  by fusion.
+	****************************************************************************/
+	void Connect( FilterFramework Filter, Connector Pipe )
+	{
+		// Connect this filter's input to the connector's output end and the upstream filter's output to its input end
+		InputReadPort = ConnectInputPort( Filter, Pipe );
+		InputFilter = Filter;
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: ConnectInputPort
+	* Purpose: This method connects the output port of the upstream filter to
+	* the given connector and returns the connector's input end, without making
+	* it this filter's input port. Connect() uses it for the one input port every
+	* filter has; filters with several inputs, like MergeFilter, use it to get
+	* the rest.
+	*
+	* Arguments:
+	* FilterFramework - this is the upstream filter.
+	* Connector - this is the pipe that joins the two filters.
+	* Returns: the end of the connector this filter reads from.
+	* Exceptions: IllegalStateException if the upstream filter's output port
+	*			  is already connected elsewhere, through another connector or
+	*			  by fusion.
+	****************************************************************************/
+	InputStream ConnectInputPort( FilterFramework Filter, Connector Pipe )
+	{
+		if (Filter.FusedOutputs != null || (Filter.OutputConnected && Filter.OutputWritePort != Pipe.outputPort()))
 		{
-			// Connect this filter's input to the upstream pipe's output stream
-			InputReadPort.connect( Filter.OutputWritePort );
+			throw new IllegalStateException(Filter.getName() + " output port is already connected; use a TeeConnector to feed several filters");
+		}
+
+		Filter.OutputWritePort = Pipe.outputPort();
+		Filter.OutputConnected = true;
+		return Pipe.inputPort();
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: ConnectFused
+	* Purpose: This method fuses this filter onto the upstream filter if this
+	* filter implements FusableFilter. A fused filter has no thread and no pipe:
+	* it runs in the upstream filter's thread, which passes it every measurement
+	* by calling its accept() method, and calls its end() method when it closes
+	* its ports. A chain of fusable filters behind one started filter therefore
+	* runs as a single loop on one thread. Several filters can be fused onto
+	* the same upstream filter; each measurement is then passed to each of them
+	* in the order they were fused, which broadcasts the stream without copying
+	* it. If this filter is not fusable, or the upstream filter's output port is
+	* already connected through a connector, it is connected through the given
+	* connector as usual.
+	*
+	* Arguments:
+	* FilterFramework - this is the filter that this filter will connect to.
+	* Connector - the pipe used if this filter cannot be fused.
+	* Returns: void
+	* Exceptions: none
+	****************************************************************************/
+	void ConnectFused( FilterFramework Filter, Connector Pipe )
+	{
+		if (this instanceof FusableFilter && !Filter.OutputConnected)
+		{
+			if (Filter.FusedOutputs == null)
+			{
+				Filter.FusedOutputs = new FusableFilter[] { (FusableFilter) this };
+			}
+			else
+			{
+				Filter.FusedOutputs = Arrays.copyOf(Filter.FusedOutputs, Filter.FusedOutputs.length + 1);
+				Filter.FusedOutputs[Filter.FusedOutputs.length - 1] = (FusableFilter) this;
+			}
 			InputFilter = Filter;
+			Fused = true;
 		}
-		catch( Exception Error )
+		else
 		{
-			System.out.println( "\n" + this.getName() + " FilterFramework error connecting::"+ Error );
+			Connect( Filter, Pipe );
 		}
 	}
 
+	/***************************************************************************
+	* CONCRETE METHOD:: IsFused
+	* Purpose: This method tells whether the filter was fused onto the filter
+	* upstream of it. A fused filter runs in that filter's thread and must not
+	* be started itself.
+	* Arguments: void
+	* Returns: true if the filter is fused.
+	* Exceptions: none
+	****************************************************************************/
+	boolean IsFused()
+	{
+		return Fused;
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: ConsumedIds
+	* Purpose: This method tells which measurements the filter reads, so the
+	* Plumber can push that set upstream to the source filter, which then
+	* leaves every other measurement out of the stream. A filter that passes
+	* measurements on reads what the filters downstream of it read (plus what
+	* it uses itself); a sink reads what it writes. A filter that does not say
+	* reads every measurement, which is always safe.
+	* Arguments: long Downstream - the set of IDs the filters connected to this
+	* filter's output read (see MeasurementCodec.idSet).
+	* Returns: the set of IDs this filter reads.
+	* Exceptions: none
+	****************************************************************************/
+	long ConsumedIds( long Downstream )
+	{
+		return MeasurementCodec.ALL_IDS;
+	}
+
 	/***************************************************************************
 	* CONCRETE METHOD:: ReadFilterInputPort
 	* Purpose: This method reads data from the input port one byte at a time.
 	* Arguments: void
 	* Returns: byte of data read from the input port of the filter.
-	* Exceptions: IOExecption, EndOfStreamException (rethrown)
+	* Exceptions: EndOfStreamException
 	****************************************************************************/
 	byte ReadFilterInputPort() throws EndOfStreamException
 	{
-		byte datum = 0;
+		int datum = -1;
+
+		if (InputStart < InputEnd)
+		{
+			return InputBuffer[InputStart++];
+		}
 
 		/***********************************************************************
-		* Since delays are possible on upstream filters, we first wait until
-		* there is data available on the input port. We check,... if no data is
-		* available on the input port we wait for a quarter of a second and check
-		* again. Note there is no timeout enforced here at all and if upstream
-		* filters are deadlocked, then this can result in infinite waits in this
-		* loop. It is necessary to check to see if we are at the end of stream
-		* in the wait loop because it is possible that the upstream filter completes
-		* while we are waiting. If this happens and we do not check for the end of
-		* stream, then we could wait forever on an upstream pipe that is long gone.
-		* Unfortunately Java pipes do not throw exceptions when the input pipe is
-		* broken.
+		* The read below blocks inside the pipe until the upstream filter either
+		* writes (and flushes) a byte or closes its output port. Both of these
+		* wake this thread up right away, so there is no polling delay between
+		* filters. A value of -1 means the upstream filter has closed its port
+		* and all of its data has been read. If the upstream filter dies without
+		* closing its port, the pipe reports itself as broken; in that case we
+		* check whether the upstream filter is gone and treat that as the end of
+		* the stream as well.
 		***********************************************************************/
 		try
 		{
-			while (InputReadPort.available()==0 )
-			{
-				if (EndOfInputStream())
-				{
-					throw new EndOfStreamException("End of input stream reached");
-				}
-				sleep(250);
-			}
+			datum = InputReadPort.read();
 		}
-		catch( EndOfStreamException Error )
+		catch( IOException Error )
 		{
-			throw Error;
+			if (!EndOfInputStream())
+			{
+				System.out.println( "\n" + this.getName() + " Pipe read error::" + Error );
+			}
 		}
-		catch( Exception Error )
+
+		if (datum < 0)
 		{
-			System.out.println( "\n" + this.getName() + " Error in read port wait loop::" + Error );
+			throw new EndOfStreamException("End of input stream reached");
 		}
+		return (byte)datum;
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: ReadFilterInputPort
+	* Purpose: This method reads a block of data from the input port, for example
+	* a whole 12 byte measurement, in one call. It blocks until len bytes have
+	* arrived. Before it blocks, any output this filter has written but not yet
+	* flushed is flushed, so the downstream filter is never left waiting on data
+	* that is sitting in this filter's output port.
+	* Arguments:
+	* 	byte[] buf - the buffer the data is read into.
+	* 	int off - the position in buf where the first byte is stored.
+	* 	int len - the number of bytes to read.
+	* Returns: the number of bytes read, which is always len.
+	* Exceptions: EndOfStreamException if the stream ends before len bytes were
+	*			  read. Like a partly read measurement in the byte loops, the
+	*			  bytes of an incomplete block are dropped.
+	****************************************************************************/
+	int ReadFilterInputPort(byte[] buf, int off, int len) throws EndOfStreamException
+	{
+		int total = Math.min(len, InputEnd - InputStart);
+		int count;
+
+		System.arraycopy(InputBuffer, InputStart, buf, off, total);
+		InputStart += total;
 
-		/***********************************************************************
-		* If at least one byte of data is available on the input
-		* pipe we can read it. We read and write one byte to and from ports.
-		***********************************************************************/
 		try
 		{
-			datum = (byte)InputReadPort.read();
-			return datum;
+			FlushBeforeWaiting(len - total);
+			while (total < len)
+			{
+				count = InputReadPort.read(buf, off + total, len - total);
+				if (count < 0)
+				{
+					break;
+				}
+				total += count;
+			}
+		}
+		catch( IOException Error )
+		{
+			if (!EndOfInputStream())
+			{
+				System.out.println( "\n" + this.getName() + " Pipe read error::" + Error );
+			}
 		}
-		catch( Exception Error )
+
+		if (total < len)
 		{
-			System.out.println( "\n" + this.getName() + " Pipe read error::" + Error );
-			return datum;
+			throw new EndOfStreamException("End of input stream reached");
 		}
+		return total;
 	}
 
 	/***************************************************************************
@@ -145,6 +368,13 @@ public class FilterFramework extends Thread
 	****************************************************************************/
 	void WriteFilterOutputPort(byte datum)
 	{
+		if (FusedOutputs != null)
+		{
+			FusedByte[0] = datum;
+			WriteFused(FusedByte, 0, 1);
+			return;
+		}
+		DrainOutputBuffer();
 		try
 		{
             OutputWritePort.write((int) datum );
@@ -157,6 +387,494 @@ public class FilterFramework extends Thread
 		return;
 	}
 
+	/***************************************************************************
+	* CONCRETE METHOD:: WriteFilterOutputPort
+	* Purpose: This method writes a block of data to the output port. Unlike the
+	* single byte version it does not flush the port, so a filter can write many
+	* blocks and wake the downstream filter once. The port is flushed explicitly
+	* with FlushFilterOutputPort(), when this filter next has to wait for input,
+	* or when the ports are closed.
+	* Arguments:
+	* 	byte[] buf - the buffer holding the data to write.
+	* 	int off - the position in buf of the first byte to write.
+	* 	int len - the number of bytes to write.
+	* Returns: void
+	* Exceptions: IOException
+	****************************************************************************/
+	void WriteFilterOutputPort(byte[] buf, int off, int len)
+	{
+		if (FusedOutputs != null)
+		{
+			WriteFused(buf, off, len);
+			return;
+		}
+		DrainOutputBuffer();
+		try
+		{
+			OutputWritePort.write(buf, off, len);
+			OutputPending = true;
+		}
+		catch( Exception Error )
+		{
+			System.out.println("\n" + this.getName() + " Pipe write error::" + Error );
+		}
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: FlushFilterOutputPort
+	* Purpose: This method flushes the output port, which wakes up the downstream
+	* filter if it is waiting for data.
+	* Arguments: void
+	* Returns: void
+	* Exceptions: IOException
+	****************************************************************************/
+	void FlushFilterOutputPort()
+	{
+		DrainOutputBuffer();
+		try
+		{
+			OutputWritePort.flush();
+			OutputPending = false;
+		}
+		catch( Exception Error )
+		{
+			System.out.println("\n" + this.getName() + " Pipe flush error::" + Error );
+		}
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: ReadMeasurement
+	* Purpose: This method reads one whole measurement from the input port and
+	* decodes it with MeasurementCodec. Data is read from the pipe in large
+	* blocks and buffered, so most calls only decode 12 bytes that are already
+	* in memory. As with the block read, pending output is flushed before this
+	* filter waits for more input.
+	* Arguments: void
+	* Returns: the measurement read. The same Measurement instance is returned
+	*		   on every call, so its fields must be copied out before the next
+	*		   call if they are needed later.
+	* Exceptions: EndOfStreamException if the stream ends before a whole
+	*			  measurement was read.
+	****************************************************************************/
+	Measurement ReadMeasurement() throws EndOfStreamException
+	{
+		if (InputEnd - InputStart < MeasurementCodec.RECORD_LENGTH)
+		{
+			FillInputBuffer(MeasurementCodec.RECORD_LENGTH);
+		}
+		CurrentMeasurement.id = MeasurementCodec.decodeId(InputBuffer, InputStart);
+		CurrentMeasurement.value = MeasurementCodec.decodeValue(InputBuffer, InputStart);
+		InputStart += MeasurementCodec.RECORD_LENGTH;
+		return CurrentMeasurement;
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: WriteMeasurement
+	* Purpose: This method encodes one measurement and queues it for the output
+	* port. Measurements are written on the port a buffer at a time and are
+	* flushed like block writes are.
+	* Arguments:
+	* 	int id - the measurement ID.
+	* 	long value - the measurement value (time, or the bits of a double).
+	* Returns: void
+	* Exceptions: none
+	****************************************************************************/
+	void WriteMeasurement(int id, long value)
+	{
+		if (FusedOutputs != null)
+		{
+			for (FusableFilter Output : FusedOutputs())
+			{
+				Output.accept(id, value);
+			}
+			return;
+		}
+		if (OutputLength == OutputBuffer.length)
+		{
+			DrainOutputBuffer();
+		}
+		MeasurementCodec.encode(OutputBuffer, OutputLength, id, value);
+		OutputLength += MeasurementCodec.RECORD_LENGTH;
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: RunFusable
+	* Purpose: This is the body of run() for a filter that implements
+	* FusableFilter and is started on its own thread rather than fused. It calls
+	* begin(), hands every measurement read from the input port to accept(), and
+	* calls end() at the end of the input stream. end() closes the ports.
+	* Arguments: void
+	* Returns: void
+	* Exceptions: none
+	****************************************************************************/
+	void RunFusable()
+	{
+		FusableFilter Filter = (FusableFilter) this;
+		Measurement Current;
+
+		Filter.begin();
+		while (true)
+		{
+			try
+			{
+				Current = ReadMeasurement();
+			}
+			catch( EndOfStreamException Error )
+			{
+				break;
+			}
+			Filter.accept(Current.id, Current.value);
+		}
+		Filter.end();
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: FusedOutputs
+	* Purpose: This method is used within this framework which is why it is private.
+	* It returns the filters fused onto this one, calling their begin() methods
+	* the first time.
+	* Arguments: void
+	* Returns: the fused downstream filters.
+	* Exceptions: none
+	****************************************************************************/
+	private FusableFilter[] FusedOutputs()
+	{
+		if (!FusedOutputBegun)
+		{
+			FusedOutputBegun = true;
+			for (FusableFilter Output : FusedOutputs)
+			{
+				Output.begin();
+			}
+		}
+		return FusedOutputs;
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: WriteFused
+	* Purpose: This method is used within this framework which is why it is private.
+	* It decodes bytes written on the output port into measurements and hands
+	* them to the fused downstream filter. A measurement split between two
+	* writes is kept in FusedPartial until the rest of it arrives.
+	* Arguments:
+	* 	byte[] buf - the buffer holding the data written.
+	* 	int off - the position in buf of the first byte.
+	* 	int len - the number of bytes written.
+	* Returns: void
+	* Exceptions: none
+	****************************************************************************/
+	private void WriteFused(byte[] buf, int off, int len)
+	{
+		FusableFilter[] Filters = FusedOutputs();
+		int count;
+
+		if (FusedPartialLength > 0)
+		{
+			count = Math.min(len, MeasurementCodec.RECORD_LENGTH - FusedPartialLength);
+			System.arraycopy(buf, off, FusedPartial, FusedPartialLength, count);
+			FusedPartialLength += count;
+			off += count;
+			len -= count;
+			if (FusedPartialLength < MeasurementCodec.RECORD_LENGTH)
+			{
+				return;
+			}
+			AcceptFused(Filters, FusedPartial, 0);
+			FusedPartialLength = 0;
+		}
+
+		while (len >= MeasurementCodec.RECORD_LENGTH)
+		{
+			AcceptFused(Filters, buf, off);
+			off += MeasurementCodec.RECORD_LENGTH;
+			len -= MeasurementCodec.RECORD_LENGTH;
+		}
+
+		if (len > 0)
+		{
+			if (FusedPartial == null)
+			{
+				FusedPartial = new byte[MeasurementCodec.RECORD_LENGTH];
+			}
+			System.arraycopy(buf, off, FusedPartial, 0, len);
+			FusedPartialLength = len;
+		}
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: AcceptFused
+	* Purpose: This method is used within this framework which is why it is private.
+	* It decodes the measurement at buf[off] once and passes it to every fused
+	* filter.
+	* Arguments:
+	* 	FusableFilter[] Filters - the fused downstream filters.
+	* 	byte[] buf - the buffer holding the encoded measurement.
+	* 	int off - the position of the measurement in buf.
+	* Returns: void
+	* Exceptions: none
+	****************************************************************************/
+	private static void AcceptFused(FusableFilter[] Filters, byte[] buf, int off)
+	{
+		int id = MeasurementCodec.decodeId(buf, off);
+		long value = MeasurementCodec.decodeValue(buf, off);
+
+		for (FusableFilter Filter : Filters)
+		{
+			Filter.accept(id, value);
+		}
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: FillInputBuffer
+	* Purpose: This method is used within this framework which is why it is private.
+	* It moves any unread bytes to the front of the input buffer and then reads
+	* from the input port until at least needed bytes are buffered. It takes
+	* whatever the pipe has available, so it only blocks while less than needed
+	* bytes are buffered.
+	* Arguments:
+	* 	int needed - the number of bytes that must be buffered on return.
+	* Returns: void
+	* Exceptions: EndOfStreamException if the stream ends first.
+	****************************************************************************/
+	private void FillInputBuffer(int needed) throws EndOfStreamException
+	{
+		int count;
+
+		InputEnd -= InputStart;
+		System.arraycopy(InputBuffer, InputStart, InputBuffer, 0, InputEnd);
+		InputStart = 0;
+
+		try
+		{
+			FlushBeforeWaiting(needed - InputEnd);
+			while (InputEnd < needed)
+			{
+				count = InputReadPort.read(InputBuffer, InputEnd, InputBuffer.length - InputEnd);
+				if (count < 0)
+				{
+					break;
+				}
+				InputEnd += count;
+			}
+		}
+		catch( IOException Error )
+		{
+			if (!EndOfInputStream())
+			{
+				System.out.println( "\n" + this.getName() + " Pipe read error::" + Error );
+			}
+		}
+
+		if (InputEnd < needed)
+		{
+			InputEnd = 0;
+			throw new EndOfStreamException("End of input stream reached");
+		}
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: FlushBeforeWaiting
+	* Purpose: This method is used within this framework which is why it is private.
+	* If this filter is about to wait for input that is not in the pipe yet, it
+	* lets the filter send on what it is holding back (see BeforeWaiting) and
+	* flushes whatever this filter has written but not flushed, so the filters
+	* downstream can keep working while this one waits.
+	* Arguments:
+	* 	int needed - the number of bytes the caller is about to read.
+	* Returns: void
+	* Exceptions: IOException
+	****************************************************************************/
+	private void FlushBeforeWaiting(int needed) throws IOException
+	{
+		if (InputReadPort.available() >= needed)
+		{
+			return;
+		}
+
+		BeforeWaiting();
+		if (OutputPending || OutputLength > 0)
+		{
+			FlushFilterOutputPort();
+		}
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: BeforeWaiting
+	* Purpose: This method is called when this filter is about to wait for input
+	* that is not in the pipe yet, right before its output is flushed. A filter
+	* that holds measurements back (in a batch, say) overrides it to write them
+	* out, so they do not wait for input that may be slow to come. It is not
+	* called for a fused filter, which never waits for input. Nothing is done by
+	* default.
+	* Arguments: void
+	* Returns: void
+	* Exceptions: none
+	****************************************************************************/
+	void BeforeWaiting()
+	{
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: DrainOutputBuffer
+	* Purpose: This method is used within this framework which is why it is private.
+	* It writes the measurements queued by WriteMeasurement() on the output port
+	* without flushing it.
+	* Arguments: void
+	* Returns: void
+	* Exceptions: IOException
+	****************************************************************************/
+	private void DrainOutputBuffer()
+	{
+		if (OutputLength == 0)
+		{
+			return;
+		}
+		try
+		{
+			OutputWritePort.write(OutputBuffer, 0, OutputLength);
+			OutputPending = true;
+		}
+		catch( Exception Error )
+		{
+			System.out.println("\n" + this.getName() + " Pipe write error::" + Error );
+		}
+		OutputLength = 0;
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: Start
+	* Purpose: This method starts the filter as a task on the given executor
+	* instead of on its own platform thread (which is what start() does). The
+	* filter's run() method is called unchanged. With an executor that runs each
+	* task on a virtual thread (see VirtualThreadExecutor()) a JVM can run many
+	* more filters at once than it could run platform threads.
+	*
+	* Filters block while they wait for their neighbours, so the executor must
+	* be able to run every filter of the network at the same time. A fixed pool
+	* with fewer threads than filters can deadlock the network.
+	*
+	* Arguments:
+	* Executor - the executor that runs the filter.
+	* Returns: void
+	* Exceptions: RejectedExecutionException if the executor does not accept the task.
+	****************************************************************************/
+	void Start( Executor Runner )
+	{
+		TaskFinished = new CountDownLatch(1);
+		TaskRunning = true;
+		try
+		{
+			Runner.execute( () -> {
+				try
+				{
+					run();
+				}
+				finally
+				{
+					TaskRunning = false;
+					TaskFinished.countDown();
+				}
+			} );
+		}
+		catch( RuntimeException Error )
+		{
+			TaskRunning = false;
+			TaskFinished.countDown();
+			throw Error;
+		}
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: IsRunning
+	* Purpose: This method tells whether the filter is still running, whether it
+	* was started on its own thread or as a task on an executor.
+	* Arguments: void
+	* Returns: true if the filter has been started and has not finished yet.
+	* Exceptions: none
+	****************************************************************************/
+	boolean IsRunning()
+	{
+		return isAlive() || TaskRunning;
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: AwaitCompletion
+	* Purpose: This method waits until the filter has finished, whether it was
+	* started on its own thread or as a task on an executor.
+	* Arguments: void
+	* Returns: void
+	* Exceptions: InterruptedException
+	****************************************************************************/
+	void AwaitCompletion() throws InterruptedException
+	{
+		if (TaskFinished != null)
+		{
+			TaskFinished.await();
+		}
+		else
+		{
+			join();
+		}
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: Fail
+	* Purpose: This method records that the filter failed, for example because
+	* its file could not be read or written, and reports it on the terminal.
+	* The filter is not stopped: a sink goes on reading its input and drops it,
+	* so the filters upstream are not left waiting on a full pipe. Whoever runs
+	* the filters checks Failure() once they have finished. Only the first
+	* failure is kept.
+	* Arguments:
+	* 	String What - what the filter was doing.
+	* 	Exception Error - what went wrong.
+	* Returns: void
+	* Exceptions: none
+	****************************************************************************/
+	void Fail( String What, Exception Error )
+	{
+		if (Failure == null)
+		{
+			Failure = Error;
+		}
+		System.out.println( "\n" + this.getName() + "::" + What + "::" + Error );
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: Failure
+	* Purpose: This method tells whether the filter failed and why.
+	* Arguments: void
+	* Returns: the first failure recorded with Fail(), or null if there was none.
+	* Exceptions: none
+	****************************************************************************/
+	Exception Failure()
+	{
+		return Failure;
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: VirtualThreadExecutor
+	* Purpose: This method returns an executor that runs every task on a new
+	* virtual thread, for use with Start(Executor). Virtual threads only exist
+	* from Java 21 on, and this code is built for older releases too, so the
+	* executor is looked up by reflection.
+	* Arguments: void
+	* Returns: the executor, or null if this JVM has no virtual threads.
+	* Exceptions: none
+	****************************************************************************/
+	static ExecutorService VirtualThreadExecutor()
+	{
+		try
+		{
+			Method Factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) Factory.invoke(null);
+		}
+		catch( ReflectiveOperationException Error )
+		{
+			return null;
+		}
+	}
+
 	/***************************************************************************
 	* CONCRETE METHOD:: EndOfInputStream
 	* Purpose: This method is used within this framework which is why it is private
@@ -172,7 +890,7 @@ public class FilterFramework extends Thread
 	****************************************************************************/
 	private boolean EndOfInputStream()
 	{
-		if (InputFilter.isAlive())
+		if (InputFilter.IsRunning())
 		{
 			return false;
 		} else {
@@ -191,6 +909,16 @@ public class FilterFramework extends Thread
 	****************************************************************************/
 	void ClosePorts()
 	{
+		if (FusedOutputs != null)
+		{
+			// The end of this filter's output is the end of the fused filters' input. A partial
+			// measurement left over is dropped, as it would be at the end of a pipe.
+			for (FusableFilter Output : FusedOutputs())
+			{
+				Output.end();
+			}
+		}
+		DrainOutputBuffer();
 		try
 		{
 			InputReadPort.close();
@@ -0,0 +1,304 @@
+/******************************************************************************************************************
+* File:FrameIndex.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Sparse time index of a flight file.
+*
+* Description:
+* This index lets SourceFilter read the part of a flight file that holds a time range instead of the whole file.
+* It is a sparse map from frame times to byte offsets: an entry for every stride-th frame (the frame's time
+* measurement, ID 0), built in one streaming pass over the file and kept next to it in a sidecar file named after
+* it with ".idx" appended (FlightData.dat.idx). The sidecar records the length and modification time of the file
+* it was built from; if either has changed, the index is built again.
+*
+* The times of a file are not always in order (several recorders, a clock that steps back), so an entry does not
+* hold the time of its frame but two bounds:
+*	maxBefore:	the latest time of all the frames before the entry;
+*	minFrom:	the earliest time of the entry's frame and all the frames after it.
+* maxBefore only grows from one entry to the next and so does minFrom, so both can be binary searched. A time range
+* [from, to] starts at the last entry whose maxBefore is earlier than from (no frame before it can be in the range)
+* and ends at the first entry whose minFrom is later than to (no frame from there on can be in the range). For a
+* file whose times are in order this is the stride around each end of the range. The frames of those two strides
+* that are outside the range are still read.
+* Parameters:
+* stride:	The number of frames from one entry to the next, DEFAULT_STRIDE (4096 frames, about 240 KB) by default.
+* Internal Methods:
+*	static FrameIndex forFile(Path data)
+*	static FrameIndex build(Path data, int stride)
+*	static FrameIndex load(Path index)
+*	void write(Path index)
+*	long startOffset(long from)
+*	long endOffset(long to)
+*	static Path sidecar(Path data)
+******************************************************************************************************************/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+final class FrameIndex
+{
+	static final int DEFAULT_STRIDE = 4096;
+	static final String SUFFIX = ".idx";
+
+	private static final int MAGIC = 0x46494458;	// "FIDX"
+	private static final int VERSION = 1;
+	private static final int READ_LENGTH = MeasurementCodec.RECORD_LENGTH * 87381;	// about 1 MB
+
+	private final long dataLength;		// of the file the index was built from
+	private final long dataModified;	// milliseconds since the epoch
+	private final int stride;
+	private final int count;			// entries
+	private final long[] offsets;		// byte offset of each entry's frame
+	private final long[] maxBefore;		// latest time of the frames before each entry
+	private final long[] minFrom;		// earliest time of the frames from each entry on
+
+	private FrameIndex(long dataLength, long dataModified, int stride, int count, long[] offsets, long[] maxBefore,
+			long[] minFrom)
+	{
+		this.dataLength = dataLength;
+		this.dataModified = dataModified;
+		this.stride = stride;
+		this.count = count;
+		this.offsets = offsets;
+		this.maxBefore = maxBefore;
+		this.minFrom = minFrom;
+	}
+
+	/**
+	 * @return the path of the sidecar index of a data file.
+	 */
+	static Path sidecar(Path data)
+	{
+		return data.resolveSibling(data.getFileName() + SUFFIX);
+	}
+
+	/**
+	 * Load the sidecar index of a data file, or build it and write the sidecar if there is none or if it was built
+	 * from an older version of the file. The index can be used even if the sidecar cannot be written.
+	 */
+	static FrameIndex forFile(Path data) throws IOException
+	{
+		Path sidecar = sidecar(data);
+		if (Files.exists(sidecar))
+		{
+			try
+			{
+				FrameIndex index = load(sidecar);
+				if (index.dataLength == Files.size(data) && index.dataModified == Files.getLastModifiedTime(data).toMillis())
+				{
+					return index;
+				}
+			}
+			catch (IOException e)
+			{
+				// an index we cannot read is built again
+			}
+		}
+
+		FrameIndex index = build(data, DEFAULT_STRIDE);
+		try
+		{
+			index.write(sidecar);
+		}
+		catch (IOException e)
+		{
+			System.out.println("\nCould not write the frame index " + sidecar + "::" + e);
+		}
+		return index;
+	}
+
+	/**
+	 * Build the index of a data file in one pass over it, with an entry every stride frames. A measurement cut off
+	 * at the end of the file is ignored.
+	 */
+	static FrameIndex build(Path data, int stride) throws IOException
+	{
+		if (stride <= 0)
+		{
+			throw new IllegalArgumentException("Stride must be positive: " + stride);
+		}
+		long modified = Files.getLastModifiedTime(data).toMillis();
+
+		long[] offsets = new long[16];
+		long[] maxBefore = new long[16];
+		long[] minFrom = new long[16];		// the earliest time of each entry's stride until the end
+		int count = 0;
+		long frames = 0;
+		long latest = Long.MIN_VALUE;		// latest time so far
+
+		byte[] block = new byte[READ_LENGTH];
+		ByteBuffer buffer = ByteBuffer.wrap(block);
+		long length;
+		long position = 0;					// offset in the file of block[0]
+		try (FileChannel in = FileChannel.open(data, StandardOpenOption.READ))
+		{
+			length = in.size();
+			while (in.read(buffer) >= 0 || buffer.position() > 0)
+			{
+				int whole = buffer.position() - buffer.position() % MeasurementCodec.RECORD_LENGTH;
+				if (whole == 0)
+				{
+					break;		// only part of a measurement is left
+				}
+				for (int off = 0; off < whole; off += MeasurementCodec.RECORD_LENGTH)
+				{
+					if (MeasurementCodec.decodeId(block, off) != 0)
+					{
+						continue;
+					}
+					long time = MeasurementCodec.decodeValue(block, off);
+					if (frames++ % stride == 0)
+					{
+						if (count == offsets.length)
+						{
+							offsets = Arrays.copyOf(offsets, count * 2);
+							maxBefore = Arrays.copyOf(maxBefore, count * 2);
+							minFrom = Arrays.copyOf(minFrom, count * 2);
+						}
+						// the first entry starts at the start of the file, so nothing ahead of the first frame is lost
+						offsets[count] = count == 0 ? 0 : position + off;
+						maxBefore[count] = latest;
+						minFrom[count] = Long.MAX_VALUE;
+						count++;
+					}
+					latest = Math.max(latest, time);
+					minFrom[count - 1] = Math.min(minFrom[count - 1], time);
+				}
+				position += whole;
+				buffer.flip().position(whole);
+				buffer.compact();		// keeps a measurement cut off by the end of the block
+			}
+		}
+
+		for (int i = count - 2; i >= 0; i--)
+		{
+			minFrom[i] = Math.min(minFrom[i], minFrom[i + 1]);
+		}
+		return new FrameIndex(length, modified, stride, count, offsets, maxBefore, minFrom);
+	}
+
+	/**
+	 * Load an index from a sidecar file.
+	 */
+	static FrameIndex load(Path index) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				throw new IOException(index + " is not a frame index");
+			}
+			long dataLength = in.readLong();
+			long dataModified = in.readLong();
+			int stride = in.readInt();
+			int count = in.readInt();
+			long[] offsets = new long[count];
+			long[] maxBefore = new long[count];
+			long[] minFrom = new long[count];
+			for (int i = 0; i < count; i++)
+			{
+				offsets[i] = in.readLong();
+				maxBefore[i] = in.readLong();
+				minFrom[i] = in.readLong();
+			}
+			return new FrameIndex(dataLength, dataModified, stride, count, offsets, maxBefore, minFrom);
+		}
+	}
+
+	/**
+	 * Write the index to a sidecar file.
+	 */
+	void write(Path index) throws IOException
+	{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(index))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(dataLength);
+			out.writeLong(dataModified);
+			out.writeInt(stride);
+			out.writeInt(count);
+			for (int i = 0; i < count; i++)
+			{
+				out.writeLong(offsets[i]);
+				out.writeLong(maxBefore[i]);
+				out.writeLong(minFrom[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return the offset in the file to start reading at for the frames from the given time on: no frame before
+	 * it has a time at or after from.
+	 */
+	long startOffset(long from)
+	{
+		// the last entry whose maxBefore is earlier than from; maxBefore[0] is Long.MIN_VALUE
+		int low = 0;
+		int high = count - 1;
+		if (count == 0 || maxBefore[0] >= from)
+		{
+			return 0;
+		}
+		while (low < high)
+		{
+			int middle = (low + high + 1) >>> 1;
+			if (maxBefore[middle] < from)
+			{
+				low = middle;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+		return offsets[low];
+	}
+
+	/**
+	 * @return the offset in the file to stop reading at for the frames up to the given time: no frame from it on
+	 * has a time at or before to.
+	 */
+	long endOffset(long to)
+	{
+		// the first entry whose minFrom is later than to
+		int low = 0;
+		int high = count;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (minFrom[middle] > to)
+			{
+				high = middle;
+			}
+			else
+			{
+				low = middle + 1;
+			}
+		}
+		return low < count ? offsets[low] : dataLength;
+	}
+
+	/**
+	 * Build the sidecar index of a data file ahead of time: java FrameIndex <data file> [stride]
+	 */
+	public static void main(String[] argv) throws IOException
+	{
+		Path data = Path.of(argv.length > 0 ? argv[0] : SourceFilter.DEFAULT_FILE_NAME);
+		int stride = argv.length > 1 ? Integer.parseInt(argv[1]) : DEFAULT_STRIDE;
+		FrameIndex index = build(data, stride);
+		index.write(sidecar(data));
+		System.out.println(sidecar(data) + ": " + index.count + " entries for " + index.dataLength + " bytes");
+	}
+}
@@ -0,0 +1,33 @@
+/******************************************************************************************************************
+* File:FusableFilter.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Filters that can be fused onto the filter upstream of them.
+*
+* Description:
+* A filter implements this interface to declare that it can run without a thread of its own. Such a filter is
+* written as three callbacks instead of a read loop: begin() before the first measurement, accept() for every
+* measurement and end() after the last one. The filter writes its output with WriteMeasurement() as usual and its
+* end() method must finish with ClosePorts().
+*
+* When the Plumber connects the filter with FilterFramework.ConnectFused(), the upstream filter calls these methods
+* directly from its own thread, so measurements pass between the two filters by method call. When the filter is
+* connected with a pipe and started instead, its run() method simply calls FilterFramework.RunFusable(), which reads
+* the input port and calls the same three methods. Either way the filter produces the same output.
+*
+* Internal Methods:
+*	void begin() - called once before the first measurement.
+*	void accept(int id, long value) - called for every measurement in the stream, in order.
+*	void end() - called once at the end of the stream.
+******************************************************************************************************************/
+
+interface FusableFilter
+{
+	void begin();
+
+	void accept(int id, long value);
+
+	void end();
+}
@@ -0,0 +1,116 @@
+/******************************************************************************************************************
+* File:MeasurementCodec.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Shared measurement encoding for the Lab 1 filters.
+*
+* Description:
+* This class holds the one definition of how a measurement travels through the pipes: a 4 byte ID followed by an
+* 8 byte value, both big-endian. The value is a time in milliseconds for ID 0 and the raw bits of a double for every
+* other ID. The ID and the value are read and written with a single int/long access through a byte array view,
+* rather than being shifted together one byte at a time, so every filter decodes the stream the same way and
+* without allocating anything.
+*
+* A filter that corrects a wild value marks it with a flag in the ID rather than giving it a new ID: the corrected
+* value is sent with CORRECTED set in its field's ID, right after the original value with ORIGINAL set. field()
+* gives the field of a flagged ID. The recorders never set these bits, so an unflagged ID is a recorded value.
+*
+* A set of IDs, such as the measurements a filter reads (see FilterFramework.ConsumedIds), is a long with a bit per
+* ID from 0 to 63. IDs outside that range are never left out of a set.
+* Parameters:
+* ID_LENGTH:		The length of a measurement ID in bytes.
+* VALUE_LENGTH:		The length of a measurement value in bytes.
+* RECORD_LENGTH:	The length of a whole measurement (ID and value) in bytes.
+* CORRECTED:		The ID flag of a value that replaces a wild one.
+* ORIGINAL:			The ID flag of the original value of a wild measurement.
+* ALL_IDS:			The set of every ID.
+* Internal Methods:
+*	static int field(int id)
+*	static long idSet(int... ids)
+*	static boolean contains(long ids, int id)
+*	static int decodeId(byte[] buf, int off)
+*	static long decodeValue(byte[] buf, int off)
+*	static void encode(byte[] buf, int off, int id, long value)
+******************************************************************************************************************/
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+final class MeasurementCodec
+{
+	static final int ID_LENGTH = 4;
+	static final int VALUE_LENGTH = 8;
+	static final int RECORD_LENGTH = ID_LENGTH + VALUE_LENGTH;
+
+	static final int CORRECTED = 1 << 30;
+	static final int ORIGINAL = 1 << 29;
+
+	static final long ALL_IDS = -1L;
+
+	private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	private MeasurementCodec() { }
+
+	/**
+	 * @return the field of the ID, without the CORRECTED and ORIGINAL flags.
+	 */
+	static int field(int id)
+	{
+		return id & ~(CORRECTED | ORIGINAL);
+	}
+
+	/**
+	 * @return the set of the given IDs, which must be from 0 to 63.
+	 */
+	static long idSet(int... ids)
+	{
+		long set = 0;
+		for (int id : ids)
+		{
+			if (id < 0 || id > 63)
+			{
+				throw new IllegalArgumentException("Measurement ID out of range: " + id);
+			}
+			set |= 1L << id;
+		}
+		return set;
+	}
+
+	/**
+	 * @return true if the set holds the field of the ID, or if the field is outside the range of a set.
+	 */
+	static boolean contains(long ids, int id)
+	{
+		int field = field(id);
+		return field < 0 || field > 63 || (ids & (1L << field)) != 0;
+	}
+
+	/**
+	 * Decode the ID of the measurement that starts at buf[off].
+	 */
+	static int decodeId(byte[] buf, int off)
+	{
+		return (int) INT_VIEW.get(buf, off);
+	}
+
+	/**
+	 * Decode the value bits of the measurement that starts at buf[off].
+	 */
+	static long decodeValue(byte[] buf, int off)
+	{
+		return (long) LONG_VIEW.get(buf, off + ID_LENGTH);
+	}
+
+	/**
+	 * Encode one measurement into buf, starting at buf[off]. RECORD_LENGTH bytes are written.
+	 */
+	static void encode(byte[] buf, int off, int id, long value)
+	{
+		INT_VIEW.set(buf, off, id);
+		LONG_VIEW.set(buf, off + ID_LENGTH, value);
+	}
+}
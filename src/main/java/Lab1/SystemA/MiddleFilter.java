@@ -13,38 +13,43 @@
 * Description:
 * This class serves as an example for how to use the FilterRemplate to create a standard filter. This particular
 * example is a simple "pass-through" filter that reads data from the filter's input port and writes data out the
-* filter's output port.
+* filter's output port. It reads what the filters downstream of it read.
 * Parameters: None
 * Internal Methods: None
 ******************************************************************************************************************/
 
-public class MiddleFilter extends FilterFramework
+public class MiddleFilter extends FilterFramework implements FusableFilter
 {
+	private long bytesread = 0;					// Number of bytes read from the input file.
+	private long byteswritten = 0;				// Number of bytes written to the stream.
+
 	public void run()
     {
-		int bytesread = 0;					// Number of bytes read from the input file.
-		int byteswritten = 0;				// Number of bytes written to the stream.
-		byte databyte = 0;					// The byte of data read from the file
+		RunFusable();
+	}
+
+	long ConsumedIds(long Downstream)
+	{
+		return Downstream;
+	}
 
+	public void begin()
+	{
 		// Next we write a message to the terminal to let the world know we are alive...
 		System.out.print( "\n" + this.getName() + "::Middle Reading ");
+	}
+
+	public void accept(int id, long value)
+	{
+		// Here we read a measurement and write a measurement
+		bytesread += MeasurementCodec.RECORD_LENGTH;
+		WriteMeasurement(id, value);
+		byteswritten += MeasurementCodec.RECORD_LENGTH;
+	}
 
-		while (true)
-		{
-			// Here we read a byte and write a byte
-			try
-			{
-				databyte = ReadFilterInputPort();
-				bytesread++;
-				WriteFilterOutputPort(databyte);
-				byteswritten++;
-			}
-			catch (EndOfStreamException e)
-			{
-				ClosePorts();
-				System.out.print( "\n" + this.getName() + "::Middle Exiting; bytes read: " + bytesread + " bytes written: " + byteswritten );
-				break;
-			}
-		}
-   }
+	public void end()
+	{
+		ClosePorts();
+		System.out.print( "\n" + this.getName() + "::Middle Exiting; bytes read: " + bytesread + " bytes written: " + byteswritten );
+	}
 }
\ No newline at end of file
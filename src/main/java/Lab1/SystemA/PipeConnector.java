@@ -0,0 +1,75 @@
+/******************************************************************************************************************
+* File:PipeConnector.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Java pipe connector, the default connection between filters.
+*
+* Description:
+* This connector joins two filters with a PipedInputStream/PipedOutputStream pair, which is how the filters have
+* always been connected. It is what FilterFramework.Connect(Filter) uses when no connector is given.
+*
+* Parameters:
+* capacity:	The size of the pipe's buffer in bytes. The default is the java pipe default of 1024 bytes.
+******************************************************************************************************************/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+class PipeConnector implements Connector
+{
+	private final PipedInputStream input;
+	private final PipedOutputStream output;
+	private final int capacity;
+
+	PipeConnector()
+	{
+		this(1024);
+	}
+
+	PipeConnector(int capacity)
+	{
+		this.capacity = capacity;
+		input = new PipedInputStream(capacity);
+		try
+		{
+			output = new PipedOutputStream(input);
+		}
+		catch (IOException e)
+		{
+			// a freshly created pipe is never already connected
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public InputStream inputPort()
+	{
+		return input;
+	}
+
+	public OutputStream outputPort()
+	{
+		return output;
+	}
+
+	public int capacity()
+	{
+		return capacity;
+	}
+
+	public long occupancy()
+	{
+		try
+		{
+			return input.available();
+		}
+		catch (IOException e)
+		{
+			return 0;	// the pipe has been closed
+		}
+	}
+}
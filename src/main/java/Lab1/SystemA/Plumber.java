@@ -14,31 +14,438 @@
 * instantiates and connects a set of filters. This example consists of three filters: a source, a middle filter
 * that acts as a pass-through filter (it does nothing to the data), and a sink filter which illustrates all kinds
 * of useful things that you can do with the input stream of data.
-* Parameters: None
-* Internal Methods:	None
+*
+* Usage: java Plumber [virtual] [fused] [monitor] [chunked] [columnar] [pipe=<pipe>] [pipe.sink=<pipe>]
+*			[sync=none|on_close|every_buffer] [from=<time>] [to=<time>] [fields=<id>[,<id>...]] [out=<dir>]
+*			[input file]
+*	virtual:	run the filters on virtual threads (Java 21 or later) instead of platform threads.
+*	fused:		call the middle and sink filters on the source filter's thread instead of connecting them by pipes.
+*	monitor:	print how full every pipe is twice a second.
+*	chunked:	read the input file in 1 MB chunks instead of mapping it into memory.
+*	columnar:	write OutputA.col (see ColumnarFile) instead of OutputA.csv.
+*	pipe:		the pipe out of the source filter, <bytes>[:block|spill|drop]: its capacity and what happens
+*				when it is full; a 64 KB ring buffer by default.
+*	pipe.sink:	the pipe into the sink filter, as for "pipe".
+*	sync:		when the output file is forced to the disk; none by default.
+*	from, to:	the time range to read, in milliseconds since the epoch or as a local date and time (see ParseTime).
+*	fields:		the measurement IDs whose columns are written; the time is always written.
+*	out:		the directory the output file is written to; the working directory by default.
+*	Any other argument is the input file, a .dat file (or any file that exists); the default is
+*	../DataSets/FlightData.dat. A bad or unknown option prints what is wrong and the usage line.
+* Internal Methods:
+*	static boolean Run(String[] argv)
+*	static boolean IsInputFile(String Arg)
+*	static Supplier<Connector> ParsePipe(String Spec)
+*	static int ParseCapacity(String Text, String Spec)
+*	static long ParseTime(String Text)
+*	static long ParseFields(String Spec)
+*	static boolean AwaitFilters(List<FilterFramework> Filters)
+*	static void MonitorPipes(Map<String, Connector> Pipes, List<FilterFramework> Filters)
 ******************************************************************************************************************/
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
 public class Plumber
 {
-   public static void main( String argv[])
+	static final String USAGE = "Usage: java Plumber [virtual] [fused] [monitor] [chunked] [columnar] [pipe=<pipe>]"
+			+ " [pipe.sink=<pipe>] [sync=none|on_close|every_buffer] [from=<time>] [to=<time>] [fields=<id>[,<id>...]]"
+			+ " [out=<dir>] [input file]";
+
+   public static void main(String[] argv)
    {
+		if (!Run(argv))
+		{
+			System.exit(1);
+		}
+   }
+
+	/**
+	 * Build the pipeline the arguments describe, run it and wait for it to finish. This is what main does, less
+	 * the exit status, so the pipeline can also be run (by a benchmark, say) without leaving the JVM.
+	 *
+	 * @return false if an argument was bad (the usage line has been printed) or a filter failed.
+	 */
+	static boolean Run(String[] argv)
+	{
+		/****************************************************************************
+		* The command line may ask for "virtual" threads and for "fused" filters,
+		* may set the capacity and policy of the pipe out of the source filter
+		* with "pipe=<bytes>[:block|spill|drop]" and of the pipe into the sink
+		* filter with "pipe.sink=", may ask to "monitor" how full the
+		* pipes are, may ask for the input file to be read in "chunked" mode
+		* instead of being mapped into memory, may choose when the CSV file is
+		* forced to the disk with "sync=none|on_close|every_buffer", may read only
+		* the frames of a time range with "from=<time>" and "to=<time>" (see
+		* ParseTime), may write only some columns with "fields=<id>,<id>...", may
+		* ask for the output to be written as a "columnar" file instead of CSV, may
+		* choose the directory it is written to with "out=<dir>", and may name the
+		* input file. The default input is FlightData.dat.
+		****************************************************************************/
+
+		boolean Virtual = false;
+		boolean Fused = false;
+		boolean Monitor = false;
+		boolean Columnar = false;
+		SourceFilter.ReadMode Mode = SourceFilter.ReadMode.MAPPED;
+		Supplier<Connector> MiddlePipes = ParsePipe(null);
+		Supplier<Connector> SinkPipes = ParsePipe(null);
+		AsyncFileWriter.Sync Sync = AsyncFileWriter.Sync.NONE;
+		long From = Long.MIN_VALUE;
+		long To = Long.MAX_VALUE;
+		long Fields = SinkFilter.ALL_COLUMNS;
+		String InputFile = null;
+		Path OutputDir = Path.of("");
+		try
+		{
+			for (String Arg : argv)
+			{
+				if (Arg.equals("virtual"))
+				{
+					Virtual = true;
+				}
+				else if (Arg.equals("fused"))
+				{
+					Fused = true;
+				}
+				else if (Arg.equals("monitor"))
+				{
+					Monitor = true;
+				}
+				else if (Arg.equals("columnar"))
+				{
+					Columnar = true;
+				}
+				else if (Arg.equals("chunked"))
+				{
+					Mode = SourceFilter.ReadMode.CHUNKED;
+				}
+				else if (Arg.startsWith("pipe="))
+				{
+					MiddlePipes = ParsePipe(Arg.substring("pipe=".length()));
+				}
+				else if (Arg.startsWith("pipe.sink="))
+				{
+					SinkPipes = ParsePipe(Arg.substring("pipe.sink=".length()));
+				}
+				else if (Arg.startsWith("sync="))
+				{
+					Sync = AsyncFileWriter.Sync.valueOf(Arg.substring("sync=".length()).toUpperCase());
+				}
+				else if (Arg.startsWith("from="))
+				{
+					From = ParseTime(Arg.substring("from=".length()));
+				}
+				else if (Arg.startsWith("to="))
+				{
+					To = ParseTime(Arg.substring("to=".length()));
+				}
+				else if (Arg.startsWith("fields="))
+				{
+					Fields = ParseFields(Arg.substring("fields=".length()));
+				}
+				else if (Arg.startsWith("out="))
+				{
+					OutputDir = Path.of(Arg.substring("out=".length()));
+				}
+				else if (IsInputFile(Arg) && InputFile == null)
+				{
+					InputFile = Arg;
+				}
+				else if (IsInputFile(Arg))
+				{
+					throw new IllegalArgumentException("More than one input file: " + Arg);
+				}
+				else
+				{
+					throw new IllegalArgumentException("Unknown option: " + Arg);
+				}
+			}
+		}
+		catch (IllegalArgumentException | DateTimeException Error)
+		{
+			System.out.println(Error.getMessage());
+			System.out.println(USAGE);
+			return false;
+		}
+
 		// Here we instantiate three filters.
-		SourceFilter Filter1 = new SourceFilter();
+		SourceFilter Filter1 = new SourceFilter(InputFile == null ? SourceFilter.DEFAULT_FILE_NAME : InputFile, Mode,
+				From, To);
 		MiddleFilter Filter2 = new MiddleFilter();
-		SinkFilter Filter3 = new SinkFilter();
+		FilterFramework Filter3 = Columnar
+				? new ColumnarSinkFilter(OutputDir.resolve("OutputA" + ColumnarFile.SUFFIX).toString(), Sync, Fields)
+				: new SinkFilter(OutputDir.resolve("OutputA.csv").toString(), Sync, Fields);
+
+		/****************************************************************************
+		* Here we push the measurements the filters read upstream, from the sink to
+		* the source, which leaves every other measurement out of the stream.
+		****************************************************************************/
+
+		Filter1.Project(Filter2.ConsumedIds(Filter3.ConsumedIds(MeasurementCodec.ALL_IDS)));
 
 		/****************************************************************************
 		* Here we connect the filters starting with the sink filter (Filter 3) which
 		* we connect to Filter2 the middle filter. Then we connect Filter2 to the
-		* source filter (Filter1).
+		* source filter (Filter1). Every connection is given its own connector, so
+		* the kind of pipe can be chosen per edge: RingBufferConnector is a lock-free
+		* ring buffer, BufferedConnector can spill to disk or drop frames when it is
+		* full, and Connect(Filter) without a connector uses a java pipe.
+		* With "fused", ConnectFused is used instead: the middle and sink filters are
+		* then called directly by the source filter's thread for every measurement,
+		* with no pipe and no thread of their own.
 		****************************************************************************/
 
-		Filter3.Connect(Filter2); // This esstially says, "connect Filter3 input port to Filter2 output port
-		Filter2.Connect(Filter1); // This esstially says, "connect Filter2 input port to Filter1 output port
+		Map<String, Connector> Pipes = new LinkedHashMap<>();
+		Connector SinkPipe = SinkPipes.get();
+		Connector MiddlePipe = MiddlePipes.get();
+		if (Fused)
+		{
+			Filter3.ConnectFused(Filter2, SinkPipe);
+			Filter2.ConnectFused(Filter1, MiddlePipe);
+		}
+		else
+		{
+			Filter3.Connect(Filter2, SinkPipe); // This esstially says, "connect Filter3 input port to Filter2 output port
+			Filter2.Connect(Filter1, MiddlePipe); // This esstially says, "connect Filter2 input port to Filter1 output port
+			Pipes.put("source -> middle", MiddlePipe);
+			Pipes.put("middle -> sink", SinkPipe);
+		}
 
-		// Here we start the filters up.
-		Filter1.start();
-		Filter2.start();
-		Filter3.start();
-   }
+		/****************************************************************************
+		* Here we start the filters up. Each filter runs on its own thread, unless
+		* "virtual" is given on the command line, in which case the filters run on
+		* virtual threads (Java 21 or later). Fused filters are not started; they
+		* run inside the filter upstream of them.
+		****************************************************************************/
+
+		ExecutorService Runner = null;
+		if (Virtual)
+		{
+			Runner = FilterFramework.VirtualThreadExecutor();
+			if (Runner == null)
+			{
+				System.out.println("\nVirtual threads need Java 21 or later, using platform threads.");
+			}
+		}
+
+		List<FilterFramework> Filters = List.of(Filter1, Filter2, Filter3);
+		for (FilterFramework Filter : Filters)
+		{
+			if (Filter.IsFused())
+			{
+				continue;
+			}
+
+			if (Runner == null)
+			{
+				Filter.start();
+			}
+			else
+			{
+				Filter.Start(Runner);
+			}
+		}
+
+		if (Runner != null)
+		{
+			Runner.shutdown();	// the filters keep running, no new tasks are accepted
+		}
+
+		if (Monitor)
+		{
+			MonitorPipes(Pipes, Filters);
+		}
+
+		/****************************************************************************
+		* Here we wait for the filters to finish. A filter that could not read or
+		* write its file has reported it already; the exit status tells the caller.
+		****************************************************************************/
+
+		return AwaitFilters(Filters);
+	}
+
+	/**
+	 * Tell an input file from a misspelt option: an option has an '=' or is one of the words above, an input file
+	 * is a .dat file or a file that exists.
+	 */
+	static boolean IsInputFile(String Arg)
+	{
+		if (Arg.contains("="))
+		{
+			return false;
+		}
+		return Arg.endsWith(".dat") || Files.isRegularFile(Path.of(Arg));
+	}
+
+	/**
+	 * Parse a "pipe=" option, <bytes>[:block|spill|drop], into a maker of the connectors it describes: a new
+	 * BufferedConnector of that capacity and policy for every edge the option is used for. Without the option
+	 * (null), the edges get the usual 64 KB ring buffer.
+	 *
+	 * @throws IllegalArgumentException if the option does not describe a pipe.
+	 */
+	static Supplier<Connector> ParsePipe(String Spec)
+	{
+		if (Spec == null)
+		{
+			return () -> new RingBufferConnector(64 * 1024);
+		}
+
+		String[] Parts = Spec.split(":", -1);
+		int Capacity = ParseCapacity(Parts[0], Spec);
+		BufferedConnector.Policy Policy;
+		switch (Parts.length > 1 ? Parts[1] : "block")
+		{
+			case "block":
+				Policy = BufferedConnector.Policy.BLOCK;
+				break;
+			case "spill":
+				Policy = BufferedConnector.Policy.SPILL;
+				break;
+			case "drop":
+				Policy = BufferedConnector.Policy.DROP_OLDEST;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown pipe policy: " + Spec);
+		}
+		if (Parts.length > 2)
+		{
+			throw new IllegalArgumentException("Bad pipe: " + Spec);
+		}
+		return () -> new BufferedConnector(Capacity, Policy);
+	}
+
+	/**
+	 * Parse the capacity of a pipe in bytes: from the length of one measurement to 1 GB.
+	 */
+	static int ParseCapacity(String Text, String Spec)
+	{
+		int Capacity;
+		try
+		{
+			Capacity = Integer.parseInt(Text);
+		}
+		catch (NumberFormatException Error)
+		{
+			throw new IllegalArgumentException("Bad pipe capacity in bytes: " + Spec);
+		}
+		if (Capacity < MeasurementCodec.RECORD_LENGTH || Capacity > (1 << 30))
+		{
+			throw new IllegalArgumentException("Pipe capacity out of range: " + Spec);
+		}
+		return Capacity;
+	}
+
+	/**
+	 * Parse the time of a "from=" or "to=" option: milliseconds since the epoch, or a local date and time such as
+	 * 2020-01-10T11:19:25 (or 2020-01-10T11:19:25.798) in the default time zone.
+	 */
+	static long ParseTime(String Text)
+	{
+		if (Text.chars().allMatch(Character::isDigit))
+		{
+			return Long.parseLong(Text);
+		}
+		return LocalDateTime.parse(Text).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	/**
+	 * Parse the IDs of a "fields=" option, such as 2 or 1,2,4, into the set of columns to write. The time is always
+	 * written.
+	 */
+	static long ParseFields(String Spec)
+	{
+		long Fields = MeasurementCodec.idSet(0);
+		for (String Id : Spec.split(","))
+		{
+			int Field = Integer.parseInt(Id.trim());
+			if (Field < 1 || Field >= SinkFilter.COLUMNS.length)
+			{
+				throw new IllegalArgumentException("No column for measurement ID " + Field);
+			}
+			Fields |= MeasurementCodec.idSet(Field);
+		}
+		return Fields;
+	}
+
+	/**
+	 * Wait until the filters have finished.
+	 *
+	 * @return false if one of them failed (see FilterFramework.Fail) or the wait was interrupted.
+	 */
+	static boolean AwaitFilters(List<FilterFramework> Filters)
+	{
+		try
+		{
+			for (FilterFramework Filter : Filters)
+			{
+				Filter.AwaitCompletion();
+			}
+		}
+		catch (InterruptedException Error)
+		{
+			return false;
+		}
+
+		boolean Succeeded = true;
+		for (FilterFramework Filter : Filters)
+		{
+			Succeeded &= Filter.Failure() == null;
+		}
+		return Succeeded;
+	}
+
+	/**
+	 * Print how full each pipe is twice a second until the filters have finished, then the most each pipe held
+	 * and what it spilled or dropped.
+	 */
+	static void MonitorPipes(Map<String, Connector> Pipes, List<FilterFramework> Filters)
+	{
+		boolean Running = true;
+		while (Running)
+		{
+			try
+			{
+				Thread.sleep(500);
+			}
+			catch (InterruptedException Error)
+			{
+				return;
+			}
+
+			Running = false;
+			for (FilterFramework Filter : Filters)
+			{
+				Running |= Filter.IsRunning();
+			}
+
+			StringBuilder Line = new StringBuilder("\nPipes:");
+			for (Map.Entry<String, Connector> Pipe : Pipes.entrySet())
+			{
+				Line.append("  ").append(Pipe.getKey()).append(' ').append(Pipe.getValue().occupancy())
+					.append('/').append(Pipe.getValue().capacity());
+			}
+			System.out.print(Line);
+		}
+
+		for (Map.Entry<String, Connector> Pipe : Pipes.entrySet())
+		{
+			if (Pipe.getValue() instanceof BufferedConnector)
+			{
+				BufferedConnector Buffered = (BufferedConnector) Pipe.getValue();
+				System.out.print("\n" + Pipe.getKey() + ": held at most " + Buffered.highWater() + " bytes, spilled "
+						+ Buffered.spilledBytes() + " bytes, dropped " + Buffered.droppedFrames() + " frames");
+			}
+		}
+		System.out.println();
+	}
 }
\ No newline at end of file
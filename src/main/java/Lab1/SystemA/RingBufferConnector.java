@@ -0,0 +1,355 @@
+/******************************************************************************************************************
+* File:RingBufferConnector.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Lock-free single producer/single consumer ring buffer connector.
+*
+* Description:
+* This connector joins two filters with a byte ring buffer instead of a java pipe. Exactly one filter writes to it
+* and exactly one filter reads from it, so no locks are needed: the writer only ever moves the tail sequence and
+* the reader only ever moves the head sequence. Both sequences count bytes from the start of the stream and never
+* wrap; their difference is the number of bytes in the ring. Each sequence sits on its own cache line (see the
+* padding classes below) so the writer and the reader do not slow each other down by sharing one, and each side
+* keeps a private copy of the other side's sequence that it only refreshes when the ring looks full or empty.
+*
+* A side that cannot make progress first spins briefly (only on a multiprocessor, where the other side can be
+* running at the same time), then yields a few times and then parks. The other side unparks it after it next
+* moves its sequence or closes its port. A parked side also wakes up every few milliseconds to check that the
+* thread on the other end is still alive, so a filter that dies without closing its port is reported as a broken
+* pipe instead of hanging the network, just like a java pipe.
+*
+* Parameters:
+* capacity:	The size of the ring in bytes. It is rounded up to a power of two.
+******************************************************************************************************************/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
+
+// The padding classes keep head and tail on different cache lines. The JVM lays out the fields of a superclass
+// before those of its subclasses, so the longs declared between the two sequences always separate them.
+abstract class RingBufferPad0
+{
+	long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class RingBufferHead extends RingBufferPad0
+{
+	// Sequence of the next byte the reader will read. Only the reader writes it.
+	volatile long head;
+}
+
+abstract class RingBufferPad1 extends RingBufferHead
+{
+	long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class RingBufferTail extends RingBufferPad1
+{
+	// Sequence one past the last byte the writer has published. Only the writer writes it.
+	volatile long tail;
+}
+
+abstract class RingBufferPad2 extends RingBufferTail
+{
+	long p20, p21, p22, p23, p24, p25, p26, p27;
+}
+
+class RingBufferConnector extends RingBufferPad2 implements Connector
+{
+	private static final int SPIN_TRIES = Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+	private static final int YIELD_TRIES = 10;
+	private static final long PARK_NANOS = 10_000_000L;
+
+	private final byte[] buffer;
+	private final int mask;
+
+	private volatile boolean writerClosed = false;
+	private volatile boolean readerClosed = false;
+
+	// Threads on each end, recorded on their first read or write, and the thread currently parked on each end.
+	private volatile Thread readerThread;
+	private volatile Thread writerThread;
+	private volatile Thread waitingReader;
+	private volatile Thread waitingWriter;
+
+	private final RingInput input = new RingInput();
+	private final RingOutput output = new RingOutput();
+
+	RingBufferConnector(int capacity)
+	{
+		if (capacity <= 0 || capacity > (1 << 30))
+		{
+			throw new IllegalArgumentException("Ring buffer capacity out of range: " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+		{
+			size <<= 1;
+		}
+		buffer = new byte[size];
+		mask = size - 1;
+	}
+
+	public InputStream inputPort()
+	{
+		return input;
+	}
+
+	public OutputStream outputPort()
+	{
+		return output;
+	}
+
+	/**
+	 * @return the size of the ring in bytes.
+	 */
+	public int capacity()
+	{
+		return buffer.length;
+	}
+
+	/**
+	 * @return the number of bytes written to the ring that have not been read yet.
+	 */
+	public long occupancy()
+	{
+		return tail - head;
+	}
+
+	/** The reader's end of the ring. */
+	private final class RingInput extends InputStream
+	{
+		private long cachedTail = 0;
+		private Thread owner;
+		private final byte[] single = new byte[1];
+
+		public int read() throws IOException
+		{
+			if (read(single, 0, 1) < 0)
+			{
+				return -1;
+			}
+			return single[0] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (owner == null)
+			{
+				owner = Thread.currentThread();
+				readerThread = owner;
+			}
+			if (len == 0)
+			{
+				return 0;
+			}
+
+			long h = head;
+			if (cachedTail == h)
+			{
+				cachedTail = awaitData(h);
+				if (cachedTail == h)
+				{
+					return -1;	// the writer closed its port and everything has been read
+				}
+			}
+
+			int count = (int) Math.min(len, cachedTail - h);
+			int index = (int) (h & mask);
+			int first = Math.min(count, buffer.length - index);
+			System.arraycopy(buffer, index, b, off, first);
+			System.arraycopy(buffer, 0, b, off + first, count - first);
+			head = h + count;
+
+			Thread writer = waitingWriter;
+			if (writer != null)
+			{
+				LockSupport.unpark(writer);
+			}
+			return count;
+		}
+
+		public int available()
+		{
+			return (int) Math.min(Integer.MAX_VALUE, tail - head);
+		}
+
+		public void close()
+		{
+			readerClosed = true;
+			Thread writer = waitingWriter;
+			if (writer != null)
+			{
+				LockSupport.unpark(writer);
+			}
+		}
+
+		/**
+		 * Wait until the writer publishes past h or closes its port.
+		 *
+		 * @return the new tail, which equals h only if the writer closed its port.
+		 */
+		private long awaitData(long h) throws IOException
+		{
+			long t;
+			for (int i = 0; i < SPIN_TRIES + YIELD_TRIES; i++)
+			{
+				t = tail;
+				if (t != h || writerClosed)
+				{
+					return tail;
+				}
+				if (i < SPIN_TRIES)
+				{
+					Thread.onSpinWait();
+				}
+				else
+				{
+					Thread.yield();
+				}
+			}
+			while (true)
+			{
+				// Announce ourselves before the last check, so a writer that publishes after that check sees us.
+				waitingReader = owner;
+				t = tail;
+				if (t != h || writerClosed)
+				{
+					waitingReader = null;
+					return tail;
+				}
+				LockSupport.parkNanos(this, PARK_NANOS);
+				waitingReader = null;
+
+				Thread writer = writerThread;
+				if (writer != null && !writer.isAlive() && !writerClosed && tail == h)
+				{
+					throw new IOException("Pipe broken");
+				}
+			}
+		}
+	}
+
+	/** The writer's end of the ring. */
+	private final class RingOutput extends OutputStream
+	{
+		private long cachedHead = 0;
+		private Thread owner;
+		private final byte[] single = new byte[1];
+
+		public void write(int b) throws IOException
+		{
+			single[0] = (byte) b;
+			write(single, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			if (owner == null)
+			{
+				owner = Thread.currentThread();
+				writerThread = owner;
+			}
+			while (len > 0)
+			{
+				if (readerClosed)
+				{
+					throw new IOException("Pipe closed");
+				}
+				if (writerClosed)
+				{
+					throw new IOException("Write end closed");
+				}
+
+				long t = tail;
+				long free = buffer.length - (t - cachedHead);
+				if (free == 0)
+				{
+					cachedHead = awaitSpace(t);
+					continue;
+				}
+
+				int count = (int) Math.min(len, free);
+				int index = (int) (t & mask);
+				int first = Math.min(count, buffer.length - index);
+				System.arraycopy(b, off, buffer, index, first);
+				System.arraycopy(b, off + first, buffer, 0, count - first);
+				tail = t + count;
+
+				Thread reader = waitingReader;
+				if (reader != null)
+				{
+					LockSupport.unpark(reader);
+				}
+				off += count;
+				len -= count;
+			}
+		}
+
+		/**
+		 * Every write is published as soon as it is copied into the ring, so there is nothing to flush.
+		 */
+		public void flush()
+		{
+		}
+
+		public void close()
+		{
+			writerClosed = true;
+			Thread reader = waitingReader;
+			if (reader != null)
+			{
+				LockSupport.unpark(reader);
+			}
+		}
+
+		/**
+		 * Wait until the reader frees some space in the full ring or closes its port.
+		 *
+		 * @return the new head.
+		 */
+		private long awaitSpace(long t) throws IOException
+		{
+			long full = t - buffer.length;
+			long h;
+			for (int i = 0; i < SPIN_TRIES + YIELD_TRIES; i++)
+			{
+				h = head;
+				if (h != full || readerClosed)
+				{
+					return h;
+				}
+				if (i < SPIN_TRIES)
+				{
+					Thread.onSpinWait();
+				}
+				else
+				{
+					Thread.yield();
+				}
+			}
+			while (true)
+			{
+				waitingWriter = owner;
+				h = head;
+				if (h != full || readerClosed)
+				{
+					waitingWriter = null;
+					return h;
+				}
+				LockSupport.parkNanos(this, PARK_NANOS);
+				waitingWriter = null;
+
+				Thread reader = readerThread;
+				if (reader != null && !reader.isAlive() && !readerClosed && head == full)
+				{
+					throw new IOException("Read end dead");
+				}
+			}
+		}
+	}
+}
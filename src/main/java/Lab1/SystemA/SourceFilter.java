@@ -11,70 +11,225 @@
 * Description:
 * This class serves as an example for how to use the SourceFilterTemplate to create a source filter. This particular
 * filter is a source filter that reads some input from the FlightData.dat file and writes the bytes up stream.
-* Parameters: 		None
-* Internal Methods: None
+* The file is read through a FileChannel in one of two ways:
+*	MAPPED:		the file is mapped into memory a window at a time and copied from the mapping. This is the default.
+*	CHUNKED:	the file is read into a 1 MB direct buffer at a time.
+* Either way the data is written downstream in blocks of whole measurements (about 64 KB), and the byte counts are
+* kept in longs, so files larger than 2 GB are read to the end.
+*
+* Given a time range, the filter reads only the part of the file that can hold frames of that range, as found in the
+* file's FrameIndex (which is built and kept next to the file the first time). The index gives whole strides, which
+* start on a frame, and within them the filter writes only the frames whose time stamps are in the range. Frames are
+* in time order in a recorder's file, so it stops reading at the first frame after the range.
+*
+* Given the set of IDs the filters downstream read (see Project), the filter leaves every other measurement out of
+* the blocks it writes. Either way, what is left out never goes through a pipe or reaches another filter.
+* Parameters:
+* fileName:	The input data file, ../DataSets/FlightData.dat by default.
+* mode:		How the file is read, MAPPED by default.
+* from, to:	The time range to read, in milliseconds since the epoch, both included. The whole file by default.
+* Internal Methods:
+*	void Project(long Ids)
+*	int select(byte[] block, int length)
 ******************************************************************************************************************/
 
-import java.io.DataInputStream;
-import java.io.EOFException;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public class SourceFilter extends FilterFramework
 {
+	enum ReadMode { MAPPED, CHUNKED }
+
+	// Blocks hold whole measurements, so a fused filter downstream is never handed part of one.
+	static final int BLOCK_LENGTH = MeasurementCodec.RECORD_LENGTH * 5461;
+	// A mapping can be at most 2 GB; larger files are mapped one window after the other.
+	static final long MAP_WINDOW = (long) BLOCK_LENGTH * 16384;
+	private static final int CHUNK_LENGTH = BLOCK_LENGTH * 16;
+
+	static final String DEFAULT_FILE_NAME = "../DataSets/FlightData.dat";
+
+	private final String fileName;	// Input data file.
+	private final ReadMode mode;	// How the file is read.
+	private final long from;		// Time range to read; Long.MIN_VALUE and Long.MAX_VALUE for the whole file.
+	private final long to;
+	private long projection = MeasurementCodec.ALL_IDS;	// IDs written downstream
+
+	private boolean inRange;		// the frame being read is in the time range
+	private boolean pastRange;		// a frame after the time range was read; nothing more is written
+
+	public SourceFilter()
+	{
+		this(DEFAULT_FILE_NAME);
+	}
+
+	public SourceFilter(String fileName)
+	{
+		this(fileName, ReadMode.MAPPED);
+	}
+
+	public SourceFilter(String fileName, ReadMode mode)
+	{
+		this(fileName, mode, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	public SourceFilter(String fileName, ReadMode mode, long from, long to)
+	{
+		this.fileName = fileName;
+		this.mode = mode;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Write only the measurements whose IDs are in the given set (see MeasurementCodec.idSet) downstream. The
+	 * Plumber calls this with the IDs the filters downstream read, before the filter is started.
+	 */
+	void Project(long Ids)
+	{
+		projection = Ids;
+	}
+
 	public void run()
     {
-		String fileName = "../DataSets/FlightData.dat";	// Input data file.
-		int bytesread = 0;					// Number of bytes read from the input file.
-		int byteswritten = 0;				// Number of bytes written to the stream.
-		DataInputStream in = null;			// File stream reference.
-		byte databyte = 0;					// The byte of data read from the file
+		long bytesread = 0;					// Number of bytes read from the input file.
+		long byteswritten = 0;				// Number of bytes written to the stream.
+		byte[] block = new byte[BLOCK_LENGTH];	// The block of data written to the output port
+		int blocklength;					// Number of bytes in the current block
 
-		try
+		try (FileChannel in = FileChannel.open(Path.of(fileName), StandardOpenOption.READ))
 		{
 			// Here we open the file and write a message to the terminal.
-			in = new DataInputStream(new FileInputStream(fileName));
 			System.out.println("\n" + this.getName() + "::Source reading file..." );
 
+			// With a time range, only the bytes the frame index gives for it are read.
+			long start = 0;
+			long end = in.size();
+			inRange = from == Long.MIN_VALUE;		// until the first frame, unless there is a lower bound
+			pastRange = false;
+			if (from != Long.MIN_VALUE || to != Long.MAX_VALUE)
+			{
+				FrameIndex index = FrameIndex.forFile(Path.of(fileName));
+				start = index.startOffset(from);
+				end = Math.max(start, Math.min(end, index.endOffset(to)));
+				System.out.println("\n" + this.getName() + "::Source reading bytes " + start + " to " + end + " for the time range");
+			}
+
 			/***********************************************************************************
 			*	Here we read the data from the file and send it out the filter's output port one
-			* 	byte at a time. The loop stops when it encounters an EOFException.
+			* 	block at a time, flushing once per block. A mapped file is copied from one window
+			* 	of the mapping after the other; otherwise the file is read a chunk at a time into
+			* 	a direct buffer. Either way the loop stops at the end of the range read.
 			***********************************************************************************/
-			while(true)
+			if (mode == ReadMode.MAPPED)
+			{
+				for (long position = start; position < end && !pastRange; position += MAP_WINDOW)
+				{
+					MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, end - position));
+					while (window.hasRemaining() && !pastRange)
+					{
+						blocklength = Math.min(block.length, window.remaining());
+						window.get(block, 0, blocklength);
+						bytesread += blocklength;
+						blocklength = select(block, blocklength);
+						WriteFilterOutputPort(block, 0, blocklength);
+						FlushFilterOutputPort();
+						byteswritten += blocklength;
+					}
+				}
+			}
+			else
 			{
-				databyte = in.readByte();
-				bytesread++;
-				WriteFilterOutputPort(databyte);
-				byteswritten++;
+				ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_LENGTH);
+				in.position(start);
+				long left = end - start;
+				while (left > 0 && !pastRange)
+				{
+					// a measurement cut off by the last read is kept at the start of the chunk
+					chunk.limit((int) Math.min(CHUNK_LENGTH, chunk.position() + left));
+					int count = in.read(chunk);
+					if (count < 0)
+					{
+						break;
+					}
+					left -= count;
+					chunk.flip();
+					int whole = left > 0 ? chunk.remaining() - chunk.remaining() % MeasurementCodec.RECORD_LENGTH : chunk.remaining();
+					while (chunk.position() < whole && !pastRange)
+					{
+						blocklength = Math.min(block.length, whole - chunk.position());
+						chunk.get(block, 0, blocklength);
+						bytesread += blocklength;
+						blocklength = select(block, blocklength);
+						WriteFilterOutputPort(block, 0, blocklength);
+						FlushFilterOutputPort();
+						byteswritten += blocklength;
+					}
+					chunk.compact();
+				}
 			}
+			System.out.println("\n" + this.getName() + "::End of file reached..." );
 		}
 		/***********************************************************************************
-		*	The following exception is raised when we hit the end of input file. Once we
-		* 	reach this point, we close the input file, close the filter ports and exit.
+		*	The following exception is raised should we have a problem opening or reading the
+		* 	file. The ports are closed anyway, so the filters downstream see the end of their
+		* 	input instead of waiting for data that will not come.
 		***********************************************************************************/
-		catch ( EOFException eoferr )
+		catch ( IOException iox )
 		{
-			System.out.println("\n" + this.getName() + "::End of file reached..." );
-			try
+			Fail("Problem reading input data file", iox);
+		}
+
+		ClosePorts();
+		System.out.println( "\n" + this.getName() + "::Read file complete, bytes read::" + bytesread + " bytes written: " + byteswritten );
+   } // run
+
+	/**
+	 * Leave out of a block the measurements of frames outside the time range and the measurements whose IDs are not
+	 * in the projection, moving the others to the front. At the first frame after the range the rest of the block is
+	 * left out and pastRange is set. Part of a measurement at the end of the block (the end of the file) is kept if
+	 * its frame is.
+	 *
+	 * @return the length of the block that is left.
+	 */
+	private int select(byte[] block, int length)
+	{
+		if (projection == MeasurementCodec.ALL_IDS && from == Long.MIN_VALUE && to == Long.MAX_VALUE)
+		{
+			return length;
+		}
+		int kept = 0;
+		int off = 0;
+		for (; off + MeasurementCodec.RECORD_LENGTH <= length; off += MeasurementCodec.RECORD_LENGTH)
+		{
+			int id = MeasurementCodec.decodeId(block, off);
+			if (id == 0)
 			{
-				in.close();
-				ClosePorts();
-				System.out.println( "\n" + this.getName() + "::Read file complete, bytes read::" + bytesread + " bytes written: " + byteswritten );
+				long time = MeasurementCodec.decodeValue(block, off);
+				if (time > to)
+				{
+					pastRange = true;
+					return kept;
+				}
+				inRange = time >= from;
 			}
-			/***********************************************************************************
-			*	The following exception is raised should we have a problem closing the file.
-			***********************************************************************************/
-			catch (Exception closeerr)
+			if (inRange && MeasurementCodec.contains(projection, id))
 			{
-				System.out.println("\n" + this.getName() + "::Problem closing input data file::" + closeerr);
+				if (kept != off)
+				{
+					System.arraycopy(block, off, block, kept, MeasurementCodec.RECORD_LENGTH);
+				}
+				kept += MeasurementCodec.RECORD_LENGTH;
 			}
 		}
-		/***********************************************************************************
-		*	The following exception is raised should we have a problem opening the file.
-		***********************************************************************************/
-		catch ( IOException iox )
+		if (!inRange)
 		{
-			System.out.println("\n" + this.getName() + "::Problem reading input data file::" + iox );
+			return kept;
 		}
-   } // run
-} // SourceFilter
\ No newline at end of file
+		System.arraycopy(block, off, block, kept, length - off);
+		return kept + length - off;
+	}
+}
\ No newline at end of file
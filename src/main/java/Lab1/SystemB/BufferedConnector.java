@@ -0,0 +1,505 @@
+/******************************************************************************************************************
+* File:BufferedConnector.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Connector with a chosen capacity and a policy for when it fills up.
+*
+* Description:
+* This connector joins two filters with a byte ring of a chosen size, and lets the plumber choose what happens when
+* the downstream filter falls so far behind that the ring fills up:
+*	BLOCK:			the upstream filter waits, as it does on every other connector.
+*	SPILL:			the bytes that do not fit are appended to a temporary file and read back from there once the
+*					ring is empty, so the upstream filter never waits and nothing is lost. The file is only used
+*					while the downstream filter is behind: it is emptied as soon as everything in it has been read,
+*					and deleted when the input port is closed.
+*	DROP_OLDEST:	the oldest frame in the ring that the downstream filter has not started reading is thrown
+*					away to make room. Only whole frames (an ID 0 measurement and everything up to the next one) are
+*					dropped, so the downstream filter still sees whole measurements and whole frames. If the ring
+*					holds no whole frame to drop, the upstream filter waits as with BLOCK.
+* The stream must be made of whole 12 byte measurements from its start, as all streams between filters are.
+*
+* Unlike RingBufferConnector, the ring is guarded by a lock: spilling and dropping change both ends of the ring,
+* which cannot be done safely by the two filters on their own. The lock is only taken once per block read or
+* written, so the cost is small for the block reads and writes the framework uses.
+*
+* Parameters:
+* capacity:	The size of the ring in bytes. It is rounded up to a power of two.
+* policy:	What the writer does when the ring is full.
+******************************************************************************************************************/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+class BufferedConnector implements Connector
+{
+	enum Policy { BLOCK, SPILL, DROP_OLDEST }
+
+	// How long a side waits before it checks again that the thread on the other end is alive.
+	private static final long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final byte[] buffer;
+	private final int mask;
+	private final Policy policy;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	// Everything below is guarded by lock. head and tail count bytes from the start of the stream and never wrap.
+	private long head = 0;
+	private long tail = 0;
+	private boolean writerClosed = false;
+	private boolean readerClosed = false;
+	private Thread readerThread;
+	private Thread writerThread;
+
+	// The spill file holds the bytes from spillRead up to spillWrite, which all come after the bytes in the ring.
+	private FileChannel spill = null;
+	private long spillRead = 0;
+	private long spillWrite = 0;
+
+	private long spilledBytes = 0;
+	private long droppedFrames = 0;
+	private long droppedBytes = 0;
+	private long highWater = 0;
+
+	private final BufferedInput input = new BufferedInput();
+	private final BufferedOutput output = new BufferedOutput();
+
+	BufferedConnector(int capacity, Policy policy)
+	{
+		if (capacity < MeasurementCodec.RECORD_LENGTH || capacity > (1 << 30))
+		{
+			throw new IllegalArgumentException("Connector capacity out of range: " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+		{
+			size <<= 1;
+		}
+		buffer = new byte[size];
+		mask = size - 1;
+		this.policy = policy;
+	}
+
+	public InputStream inputPort()
+	{
+		return input;
+	}
+
+	public OutputStream outputPort()
+	{
+		return output;
+	}
+
+	public int capacity()
+	{
+		return buffer.length;
+	}
+
+	/**
+	 * @return the number of bytes written that have not been read yet, in the ring and in the spill file.
+	 */
+	public long occupancy()
+	{
+		lock.lock();
+		try
+		{
+			return tail - head + spillWrite - spillRead;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the largest number of bytes that have been waiting in the ring and the spill file at once.
+	 */
+	long highWater()
+	{
+		lock.lock();
+		try
+		{
+			return highWater;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the total number of bytes that have gone through the spill file.
+	 */
+	long spilledBytes()
+	{
+		lock.lock();
+		try
+		{
+			return spilledBytes;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of frames thrown away by the DROP_OLDEST policy.
+	 */
+	long droppedFrames()
+	{
+		lock.lock();
+		try
+		{
+			return droppedFrames;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of bytes thrown away by the DROP_OLDEST policy.
+	 */
+	long droppedBytes()
+	{
+		lock.lock();
+		try
+		{
+			return droppedBytes;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Append to the spill file, creating it the first time.
+	 */
+	private void writeSpill(byte[] b, int off, int len) throws IOException
+	{
+		if (spill == null)
+		{
+			spill = FileChannel.open(Files.createTempFile("connector", ".spill"), StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+		}
+		ByteBuffer source = ByteBuffer.wrap(b, off, len);
+		while (source.hasRemaining())
+		{
+			spillWrite += spill.write(source, spillWrite);
+		}
+		spilledBytes += len;
+	}
+
+	/**
+	 * Read from the spill file. Once it has all been read the file is started again from its beginning.
+	 */
+	private int readSpill(byte[] b, int off, int len) throws IOException
+	{
+		int count = (int) Math.min(len, spillWrite - spillRead);
+		ByteBuffer target = ByteBuffer.wrap(b, off, count);
+		while (target.hasRemaining())
+		{
+			int read = spill.read(target, spillRead + target.position() - off);
+			if (read < 0)
+			{
+				throw new IOException("Spill file truncated");
+			}
+		}
+		spillRead += count;
+		if (spillRead == spillWrite)
+		{
+			spillRead = 0;
+			spillWrite = 0;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the ID of the measurement starting at sequence s in the ring.
+	 */
+	private int idAt(long s)
+	{
+		int id = 0;
+		for (int i = 0; i < MeasurementCodec.ID_LENGTH; i++)
+		{
+			id = (id << 8) | (buffer[(int) ((s + i) & mask)] & 0xFF);
+		}
+		return id;
+	}
+
+	/**
+	 * @return the sequence of the first time stamp (ID 0) measurement at or after the measurement boundary s that
+	 * is whole in the ring, or -1 if there is none.
+	 */
+	private long frameStart(long s)
+	{
+		for (long p = s; p + MeasurementCodec.RECORD_LENGTH <= tail; p += MeasurementCodec.RECORD_LENGTH)
+		{
+			if (idAt(p) == 0)
+			{
+				return p;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Throw away the oldest frame the reader has not started reading. The bytes before it that the reader still
+	 * has to read, at most the rest of one frame, are moved up against the next frame, and the head is moved past
+	 * the dropped frame.
+	 *
+	 * @return false if the ring holds no whole frame that can be dropped.
+	 */
+	private boolean dropOldestFrame()
+	{
+		long boundary = (head + MeasurementCodec.RECORD_LENGTH - 1) / MeasurementCodec.RECORD_LENGTH * MeasurementCodec.RECORD_LENGTH;
+		long first = frameStart(boundary);
+		if (first < 0)
+		{
+			return false;
+		}
+		long next = frameStart(first + MeasurementCodec.RECORD_LENGTH);
+		if (next < 0)
+		{
+			return false;
+		}
+
+		long dropped = next - first;
+		for (long s = first - 1; s >= head; s--)
+		{
+			buffer[(int) ((s + dropped) & mask)] = buffer[(int) (s & mask)];
+		}
+		head += dropped;
+		droppedFrames++;
+		droppedBytes += dropped;
+		return true;
+	}
+
+	/** The reader's end of the connector. */
+	private final class BufferedInput extends InputStream
+	{
+		private final byte[] single = new byte[1];
+
+		public int read() throws IOException
+		{
+			if (read(single, 0, 1) < 0)
+			{
+				return -1;
+			}
+			return single[0] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (len == 0)
+			{
+				return 0;
+			}
+			lock.lock();
+			try
+			{
+				if (readerThread == null)
+				{
+					readerThread = Thread.currentThread();
+				}
+				while (true)
+				{
+					if (readerClosed)
+					{
+						throw new IOException("Read end closed");
+					}
+					if (tail > head)
+					{
+						int count = (int) Math.min(len, tail - head);
+						int index = (int) (head & mask);
+						int first = Math.min(count, buffer.length - index);
+						System.arraycopy(buffer, index, b, off, first);
+						System.arraycopy(buffer, 0, b, off + first, count - first);
+						head += count;
+						notFull.signal();
+						return count;
+					}
+					if (spillWrite > spillRead)
+					{
+						int count = readSpill(b, off, len);
+						notFull.signal();
+						return count;
+					}
+					if (writerClosed)
+					{
+						return -1;	// the writer closed its port and everything has been read
+					}
+					if (writerThread != null && !writerThread.isAlive())
+					{
+						throw new IOException("Pipe broken");
+					}
+					notEmpty.awaitNanos(WAIT_NANOS);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Read interrupted", e);
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		public int available()
+		{
+			lock.lock();
+			try
+			{
+				return (int) Math.min(Integer.MAX_VALUE, tail - head + spillWrite - spillRead);
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		public void close() throws IOException
+		{
+			lock.lock();
+			try
+			{
+				readerClosed = true;
+				notFull.signal();
+				if (spill != null)
+				{
+					spill.close();
+					spill = null;
+					spillRead = 0;
+					spillWrite = 0;
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+
+	/** The writer's end of the connector. */
+	private final class BufferedOutput extends OutputStream
+	{
+		private final byte[] single = new byte[1];
+
+		public void write(int b) throws IOException
+		{
+			single[0] = (byte) b;
+			write(single, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			lock.lock();
+			try
+			{
+				if (writerThread == null)
+				{
+					writerThread = Thread.currentThread();
+				}
+				while (len > 0)
+				{
+					if (readerClosed)
+					{
+						throw new IOException("Pipe closed");
+					}
+					if (writerClosed)
+					{
+						throw new IOException("Write end closed");
+					}
+
+					// Once bytes are in the spill file, everything after them has to go there too to keep the order.
+					if (spillWrite > spillRead)
+					{
+						writeSpill(b, off, len);
+						break;
+					}
+
+					long free = buffer.length - (tail - head);
+					if (free > 0)
+					{
+						int count = (int) Math.min(len, free);
+						int index = (int) (tail & mask);
+						int first = Math.min(count, buffer.length - index);
+						System.arraycopy(b, off, buffer, index, first);
+						System.arraycopy(b, off + first, buffer, 0, count - first);
+						tail += count;
+						off += count;
+						len -= count;
+						continue;
+					}
+
+					if (policy == Policy.SPILL)
+					{
+						writeSpill(b, off, len);
+						break;
+					}
+					if (policy == Policy.DROP_OLDEST && dropOldestFrame())
+					{
+						continue;
+					}
+
+					if (readerThread != null && !readerThread.isAlive())
+					{
+						throw new IOException("Read end dead");
+					}
+					notEmpty.signal();
+					notFull.awaitNanos(WAIT_NANOS);
+				}
+				highWater = Math.max(highWater, tail - head + spillWrite - spillRead);
+				notEmpty.signal();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Write interrupted", e);
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Every write is published as soon as it is copied into the ring or the spill file, so there is nothing
+		 * to flush.
+		 */
+		public void flush()
+		{
+		}
+
+		public void close()
+		{
+			lock.lock();
+			try
+			{
+				writerClosed = true;
+				notEmpty.signal();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/******************************************************************************************************************
+* File:CompressedSinkFilter.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Writes the stream as compressed flight data.
+*
+* Description:
+* This sink writes every measurement it reads to a compressed flight file (.gfd), in the format of GorillaCodec,
+* instead of formatting it as CSV. The measurements are gathered a frame at a time (a frame starts at each time
+* stamp) and encoded into a block; a block is written once it holds GorillaCodec.BLOCK_FRAMES frames, and the last
+* one at the end of the stream. The file is written by an AsyncFileWriter, like the CSV files, so the sink holds
+* one block and the writer's buffers at most. Reading the file back with CompressedSourceFilter gives the same
+* stream, flagged IDs included.
+*
+* Usage: java CompressedSinkFilter [input file] [output file]
+*	Compresses a .dat file: the defaults are ../DataSets/FlightData.dat and the input file with .gfd in place of
+*	.dat.
+* Parameters:
+* outputPath:	The compressed file to write.
+* sync:		When the file is forced to the disk by the AsyncFileWriter that writes it.
+* Internal Methods:
+*	void endFrame()
+*	void writeBlock()
+******************************************************************************************************************/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class CompressedSinkFilter extends FilterFramework implements FusableFilter
+{
+	private final String outputPath;	// Compressed output file.
+	private final AsyncFileWriter.Sync sync;
+
+	private long bytesread = 0;			// This is the number of bytes read from the stream
+	private long byteswritten = 0;		// This is the number of bytes written to the file
+	private OutputStream output = null;
+	private final GorillaCodec.Encoder encoder = new GorillaCodec.Encoder();
+	private final byte[] header = new byte[8];
+	private int[] ids = new int[8];		// the measurements of the frame being read
+	private long[] values = new long[8];
+	private int count = 0;
+	private int frames = 0;				// frames in the block being encoded
+
+	public CompressedSinkFilter(String outputPath)
+	{
+		this(outputPath, AsyncFileWriter.Sync.NONE);
+	}
+
+	public CompressedSinkFilter(String outputPath, AsyncFileWriter.Sync sync)
+	{
+		this.outputPath = outputPath;
+		this.sync = sync;
+	}
+
+	public static void main(String[] argv)
+	{
+		String input = argv.length > 0 ? argv[0] : SourceFilter.DEFAULT_FILE_NAME;
+		String output = argv.length > 1 ? argv[1] : input.replaceFirst("(\\.dat)?$", GorillaCodec.SUFFIX);
+
+		// the sink is fused onto the source, so the file is compressed on this thread
+		SourceFilter source = new SourceFilter(input);
+		CompressedSinkFilter sink = new CompressedSinkFilter(output);
+		sink.ConnectFused(source, new RingBufferConnector(64 * 1024));
+		source.run();
+		if (source.Failure() != null || sink.Failure() != null)
+		{
+			System.exit(1);
+		}
+
+		long before = Path.of(input).toFile().length();
+		long after = Path.of(output).toFile().length();
+		System.out.printf("%n%s: %d bytes, %s: %d bytes, %.1f times smaller%n", input, before, output, after,
+				(double) before / Math.max(after, 1));
+	}
+
+	public void run()
+	{
+		RunFusable();
+	}
+
+	public void begin()
+	{
+		try {
+			if (Files.exists(Path.of(outputPath))) {
+				Files.delete(Path.of(outputPath));
+			}
+
+			output = new AsyncFileWriter(Path.of(outputPath), sync);
+			writeInt(GorillaCodec.MAGIC, 0);
+			output.write(header, 0, 4);
+			byteswritten += 4;
+		} catch (IOException e) {
+			Fail("Problem opening " + outputPath, e);
+			output = OutputStream.nullOutputStream();	// the rest of the stream is read and dropped
+		}
+
+		// First we announce to the world that we are alive...
+		System.out.print( "\n" + this.getName() + "::Compressed Sink Reading ");
+	}
+
+	public void accept(int id, long val)
+	{
+		bytesread += MeasurementCodec.RECORD_LENGTH;
+
+		// a time stamp starts a new frame
+		if (id == 0 && count > 0) {
+			endFrame();
+		}
+		if (count == ids.length) {
+			ids = Arrays.copyOf(ids, count * 2);
+			values = Arrays.copyOf(values, count * 2);
+		}
+		ids[count] = id;
+		values[count] = val;
+		count++;
+	}
+
+	public void end()
+	{
+		if (count > 0) {
+			endFrame();
+		}
+		writeBlock();
+
+		ClosePorts();
+		System.out.print( "\n" + this.getName() + "::Compressed Sink Exiting; bytes read: " + bytesread + " bytes written: " + byteswritten );
+
+		try {
+			output.close();
+		} catch (IOException e) {
+			Fail("Problem writing " + outputPath, e);
+		}
+	}
+
+	// This encodes the frame that was read and writes the block once it is full.
+	private void endFrame()
+	{
+		encoder.frame(ids, values, count);
+		count = 0;
+		if (++frames == GorillaCodec.BLOCK_FRAMES) {
+			writeBlock();
+		}
+	}
+
+	// This writes the block being encoded, if it holds a frame, and starts the next one.
+	private void writeBlock()
+	{
+		if (frames == 0) {
+			return;
+		}
+		int bits = encoder.finish();
+		writeInt(frames, 0);
+		writeInt(bits, 4);
+		try {
+			output.write(header, 0, 8);
+			output.write(encoder.bytes(), 0, (bits + 7) / 8);
+			byteswritten += 8 + (bits + 7) / 8;
+		} catch (IOException e) {
+			Fail("Problem writing " + outputPath, e);
+		}
+		encoder.reset();
+		frames = 0;
+	}
+
+	private void writeInt(int value, int off)
+	{
+		header[off] = (byte) (value >>> 24);
+		header[off + 1] = (byte) (value >>> 16);
+		header[off + 2] = (byte) (value >>> 8);
+		header[off + 3] = (byte) value;
+	}
+}
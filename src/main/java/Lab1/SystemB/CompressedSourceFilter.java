@@ -0,0 +1,161 @@
+/******************************************************************************************************************
+* File:CompressedSourceFilter.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Reads compressed flight data.
+*
+* Description:
+* This source filter reads a compressed flight file (.gfd) written by CompressedSinkFilter and writes the
+* measurements downstream, in place of a SourceFilter reading a .dat file. The file is read a block at a time and
+* each block is decoded by GorillaCodec straight into blocks of whole measurements (about 64 KB), which are written
+* downstream as SourceFilter writes them, so the filters downstream (fused or not) cannot tell the two apart.
+*
+* Like SourceFilter, the filter can be given a time range and the set of IDs the filters downstream read (see
+* Project). It writes only the frames whose time stamps are in the range, only the measurements in the set, and
+* stops reading at the first frame after the range. There is no frame index for a compressed file: the blocks
+* before the range are decoded and left out.
+* Parameters:
+* fileName:	The compressed input file.
+* from, to:	The time range to read, in milliseconds since the epoch, both included. The whole file by default.
+* Internal Methods:
+*	void Project(long Ids)
+******************************************************************************************************************/
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+public class CompressedSourceFilter extends FilterFramework
+{
+	private final String fileName;	// Input data file.
+	private final long from;		// Time range to read; Long.MIN_VALUE and Long.MAX_VALUE for the whole file.
+	private final long to;
+	private long projection = MeasurementCodec.ALL_IDS;	// IDs written downstream
+
+	public CompressedSourceFilter(String fileName)
+	{
+		this(fileName, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	public CompressedSourceFilter(String fileName, long from, long to)
+	{
+		this.fileName = fileName;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Write only the measurements whose IDs are in the given set (see MeasurementCodec.idSet) downstream, as
+	 * SourceFilter.Project does.
+	 */
+	void Project(long Ids)
+	{
+		projection = Ids;
+	}
+
+	public void run()
+    {
+		long bytesread = 0;					// Number of bytes read from the input file.
+		long byteswritten = 0;				// Number of bytes written to the stream.
+		byte[] block = new byte[SourceFilter.BLOCK_LENGTH];	// The block of data written to the output port
+		int blocklength = 0;				// Number of bytes in the current block
+		byte[] data = new byte[64 * 1024];	// A compressed block read from the file
+		GorillaCodec.Decoder decoder = new GorillaCodec.Decoder();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 64 * 1024)))
+		{
+			// Here we open the file and write a message to the terminal.
+			System.out.println("\n" + this.getName() + "::Source reading compressed file..." );
+
+			if (in.readInt() != GorillaCodec.MAGIC)
+			{
+				throw new IOException(fileName + " is not a compressed flight file");
+			}
+			bytesread += 4;
+
+			/***********************************************************************************
+			*	Here we read the file one compressed block at a time and decode its frames into
+			* 	the block of measurements, which is sent out the filter's output port and flushed
+			* 	whenever the next frame might not fit.
+			***********************************************************************************/
+			boolean inRange = from == Long.MIN_VALUE;	// until the first frame, unless there is a lower bound
+			boolean pastRange = false;
+			while (!pastRange)
+			{
+				int frames;
+				try
+				{
+					frames = in.readInt();
+				}
+				catch (EOFException eof)
+				{
+					break;
+				}
+				int length = (in.readInt() + 7) / 8;
+				if (length > data.length)
+				{
+					data = new byte[length];
+				}
+				in.readFully(data, 0, length);
+				bytesread += 8 + length;
+				decoder.reset(data, length);
+
+				for (int frame = 0; frame < frames && !pastRange; frame++)
+				{
+					int count = decoder.frame();
+					int[] ids = decoder.ids();
+					long[] values = decoder.values();
+					if (ids[0] == 0)
+					{
+						pastRange = values[0] > to;
+						inRange = values[0] >= from && !pastRange;
+					}
+					if (!inRange)
+					{
+						continue;
+					}
+
+					if (blocklength + count * MeasurementCodec.RECORD_LENGTH > block.length)
+					{
+						WriteFilterOutputPort(block, 0, blocklength);
+						FlushFilterOutputPort();
+						byteswritten += blocklength;
+						blocklength = 0;
+						if (count * MeasurementCodec.RECORD_LENGTH > block.length)
+						{
+							block = new byte[count * MeasurementCodec.RECORD_LENGTH];
+						}
+					}
+					for (int i = 0; i < count; i++)
+					{
+						if (MeasurementCodec.contains(projection, ids[i]))
+						{
+							MeasurementCodec.encode(block, blocklength, ids[i], values[i]);
+							blocklength += MeasurementCodec.RECORD_LENGTH;
+						}
+					}
+				}
+			}
+			WriteFilterOutputPort(block, 0, blocklength);
+			FlushFilterOutputPort();
+			byteswritten += blocklength;
+			System.out.println("\n" + this.getName() + "::End of file reached..." );
+		}
+		/***********************************************************************************
+		*	The following exception is raised should we have a problem opening or reading the
+		* 	file. The ports are closed anyway, so the filters downstream see the end of their
+		* 	input instead of waiting for data that will not come.
+		***********************************************************************************/
+		catch ( IOException | IllegalStateException iox )
+		{
+			Fail("Problem reading input data file", iox);
+		}
+
+		ClosePorts();
+		System.out.println( "\n" + this.getName() + "::Read file complete, bytes read::" + bytesread + " bytes written: " + byteswritten );
+   } // run
+}
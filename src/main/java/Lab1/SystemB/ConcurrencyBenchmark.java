@@ -0,0 +1,185 @@
+/******************************************************************************************************************
+* File:ConcurrencyBenchmark.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Concurrent SystemB pipelines per execution mode.
+*
+* Description:
+* This program measures how many SystemB pipelines (SourceFilter -> MiddleFilter -> SinkFilter and
+* WildPointsSinkFilter) one JVM can run at the same time in each way of running filters:
+*	- platform threads: every filter is started with start(), one platform thread per filter.
+*	- thread pool: every filter is started with Start(Executor) on a cached thread pool, so threads are reused
+*	  from one round to the next.
+*	- virtual threads: every filter is started with Start(Executor) on FilterFramework.VirtualThreadExecutor().
+*	  This mode is skipped on JVMs older than Java 21.
+* For every mode it runs rounds of 1, 2, 4, ... pipelines at once, all reading the same input file, and prints the
+* wall time and throughput of each round. A round fails if a filter cannot be started (for example when the JVM
+* runs out of native threads) or if it does not finish within the time limit. The largest round that finished is
+* reported as the number of pipelines the mode can sustain. The pipelines write their CSV files to a temporary
+* directory that is removed at the end; the contents of those files are not checked here.
+*
+* Usage: java ConcurrencyBenchmark [input file] [largest round] [time limit per round in seconds]
+*	The defaults are ../DataSets/FlightData.dat, 2048 pipelines and 120 seconds.
+******************************************************************************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+public class ConcurrencyBenchmark
+{
+	private static final int RING_CAPACITY = 8 * 1024;	// kept small, there are a ring and a tee per pipeline
+
+	public static void main(String[] argv) throws Exception
+	{
+		String inputFile = argv.length > 0 ? argv[0] : "../DataSets/FlightData.dat";
+		int largestRound = argv.length > 1 ? Integer.parseInt(argv[1]) : 2048;
+		long timeLimitMillis = (argv.length > 2 ? Long.parseLong(argv[2]) : 120) * 1000;
+		long inputLength = new File(inputFile).length();
+		Path workDir = Files.createTempDirectory("pipelines");
+
+		// The filters report on System.out; keep that out of the measurements.
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+		try
+		{
+			String[] modes = { "platform threads", "thread pool", "virtual threads" };
+			for (String mode : modes)
+			{
+				ExecutorService runner = null;
+				if (mode.equals("thread pool"))
+				{
+					runner = Executors.newCachedThreadPool();
+				}
+				else if (mode.equals("virtual threads"))
+				{
+					runner = FilterFramework.VirtualThreadExecutor();
+					if (runner == null)
+					{
+						console.println(mode + ": not available on Java " + System.getProperty("java.version"));
+						continue;
+					}
+				}
+
+				console.println(mode + ":");
+				int sustained = 0;
+				for (int pipelines = 1; pipelines <= largestRound; pipelines *= 2)
+				{
+					long started = System.nanoTime();
+					String failure = runRound(pipelines, runner, inputFile, workDir, timeLimitMillis);
+					double seconds = (System.nanoTime() - started) / 1e9;
+					if (failure != null)
+					{
+						console.printf("  %6d pipelines: failed after %.2f s (%s)%n", pipelines, seconds, failure);
+						break;
+					}
+					sustained = pipelines;
+					console.printf("  %6d pipelines: %8.2f s %10.1f pipelines/s %10.1f MB/s%n", pipelines, seconds,
+							pipelines / seconds, pipelines * (double) inputLength / seconds / (1024 * 1024));
+				}
+				console.println("  sustained: " + sustained + " concurrent pipelines");
+
+				if (runner != null)
+				{
+					runner.shutdownNow();
+				}
+			}
+		}
+		finally
+		{
+			System.setOut(console);
+			try (Stream<Path> files = Files.walk(workDir))
+			{
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	/**
+	 * Run the given number of pipelines at once and wait for all of them.
+	 *
+	 * @return null if every pipeline finished, otherwise the reason the round failed.
+	 */
+	private static String runRound(int pipelines, ExecutorService runner, String inputFile, Path workDir,
+			long timeLimitMillis) throws IOException, InterruptedException
+	{
+		FilterFramework[][] filters = new FilterFramework[pipelines][];
+		Connector[][] connectors = new Connector[pipelines][];
+		for (int i = 0; i < pipelines; i++)
+		{
+			Path outputDir = Files.createDirectories(workDir.resolve("pipeline" + i));
+			SourceFilter source = new SourceFilter(inputFile);
+			MiddleFilter middle = new MiddleFilter();
+			SinkFilter sink = new SinkFilter(outputDir.resolve("OutputB.csv").toString());
+			WildPointsSinkFilter wildPoints = new WildPointsSinkFilter(outputDir.resolve("WildPoints.csv").toString());
+			TeeConnector tee = new TeeConnector(RING_CAPACITY, TeeConnector.Policy.BLOCK, 0);
+			connectors[i] = new Connector[] { new RingBufferConnector(RING_CAPACITY), tee.branch(), tee.branch() };
+			sink.Connect(middle, connectors[i][1]);
+			wildPoints.Connect(middle, connectors[i][2]);
+			middle.Connect(source, connectors[i][0]);
+			filters[i] = new FilterFramework[] { source, middle, sink, wildPoints };
+		}
+
+		String failure = null;
+		int started = 0;	// pipelines whose filters were all started
+		try
+		{
+			for (; started < pipelines; started++)
+			{
+				for (FilterFramework filter : filters[started])
+				{
+					if (runner == null)
+					{
+						filter.start();
+					}
+					else
+					{
+						filter.Start(runner);
+					}
+				}
+			}
+		}
+		catch (OutOfMemoryError | RuntimeException e)
+		{
+			failure = "could not start pipeline " + (started + 1) + ": " + e;
+		}
+
+		// Filters of a pipeline that was not started completely would wait forever on their neighbours; closing
+		// both ends of every connector of that pipeline makes them see the end of their streams instead.
+		for (int i = started; i < pipelines; i++)
+		{
+			for (Connector connector : connectors[i])
+			{
+				connector.inputPort().close();
+				connector.outputPort().close();
+			}
+		}
+
+		long deadline = System.currentTimeMillis() + timeLimitMillis;
+		for (int i = 0; i < started; i++)
+		{
+			for (FilterFramework filter : filters[i])
+			{
+				while (filter.IsRunning())
+				{
+					if (System.currentTimeMillis() > deadline)
+					{
+						return "did not finish within " + timeLimitMillis / 1000 + " s";
+					}
+					Thread.sleep(10);
+				}
+			}
+		}
+		return failure;
+	}
+}
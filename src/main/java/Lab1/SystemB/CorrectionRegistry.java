@@ -0,0 +1,121 @@
+/******************************************************************************************************************
+* File:CorrectionRegistry.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Wild point detectors for any measurement ID.
+*
+* Description:
+* This registry says which measurements are checked for wild values, and by which detector: it maps a measurement
+* ID to a WildPointDetector of its own. The lab only checks the altitude (ID 2) with a JumpDetector, but velocity,
+* pressure and temperature can be checked as well by registering detectors for their IDs. The detector decides
+* both which values are wild and what replaces them.
+*
+* The detectors are held in an array indexed by ID, so finding the detector of a measurement is an array access.
+* MiddleFilter checks every registered ID in the same pass over the stream (see WildPointBatch), so each checked
+* field costs its detector's work and nothing else: no filter, pipe or thread of its own.
+* Parameters: None. Detectors are added with register().
+* Internal Methods:
+*	CorrectionRegistry register(int id, WildPointDetector detector)
+*	WildPointDetector detector(int id)
+*	int[] ids()
+*	CorrectionRegistry copy()
+*	boolean sameStateAs(CorrectionRegistry other)
+*	static CorrectionRegistry altitude(WildPointDetector detector)
+******************************************************************************************************************/
+
+final class CorrectionRegistry
+{
+	// The largest ID a detector can be registered for.
+	static final int MAX_ID = 63;
+
+	private final WildPointDetector[] detectors = new WildPointDetector[MAX_ID + 1];
+
+	/**
+	 * @return a registry that checks the altitude (ID 2) with the given detector, as the lab asks.
+	 */
+	static CorrectionRegistry altitude(WildPointDetector detector)
+	{
+		return new CorrectionRegistry().register(2, detector);
+	}
+
+	/**
+	 * Check the measurements with the given ID with the given detector, in place of any detector registered for
+	 * it before.
+	 *
+	 * @return this registry.
+	 */
+	CorrectionRegistry register(int id, WildPointDetector detector)
+	{
+		if (id <= 0 || id > MAX_ID)
+		{
+			throw new IllegalArgumentException("Cannot check measurement ID " + id + "; IDs 1 to " + MAX_ID + " can be checked");
+		}
+		detectors[id] = detector;
+		return this;
+	}
+
+	/**
+	 * @return the detector of the measurements with the given ID, or null if they are not checked.
+	 */
+	WildPointDetector detector(int id)
+	{
+		return id >= 0 && id <= MAX_ID ? detectors[id] : null;
+	}
+
+	/**
+	 * @return the IDs that have a detector, in increasing order.
+	 */
+	int[] ids()
+	{
+		int count = 0;
+		for (WildPointDetector detector : detectors)
+		{
+			count += detector != null ? 1 : 0;
+		}
+		int[] ids = new int[count];
+		count = 0;
+		for (int id = 0; id <= MAX_ID; id++)
+		{
+			if (detectors[id] != null)
+			{
+				ids[count++] = id;
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * @return a registry with a copy of every detector, in the same state.
+	 */
+	CorrectionRegistry copy()
+	{
+		CorrectionRegistry copy = new CorrectionRegistry();
+		for (int id = 0; id <= MAX_ID; id++)
+		{
+			if (detectors[id] != null)
+			{
+				copy.detectors[id] = detectors[id].copy();
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * @return true if the other registry checks the same IDs with detectors in the same state.
+	 */
+	boolean sameStateAs(CorrectionRegistry other)
+	{
+		for (int id = 0; id <= MAX_ID; id++)
+		{
+			WildPointDetector mine = detectors[id];
+			WildPointDetector theirs = other.detectors[id];
+			if (mine == null ? theirs != null : theirs == null || !mine.sameStateAs(theirs))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,126 @@
+/******************************************************************************************************************
+* File:EwmaDetector.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Wild altitude detection against a rolling estimate of how the altitude moves.
+*
+* Description:
+* JumpDetector calls an altitude wild when it is more than a fixed 100 away from the one before it, whatever the
+* aircraft is doing. This detector learns instead how the altitude normally changes from one frame to the next,
+* over a window of recent frames, and calls an altitude wild when its change is far outside that. It keeps two
+* exponentially weighted moving averages (EWMA) of the changes between corrected altitudes:
+*	trend:		the average change, so a steady climb or descent is expected rather than wild;
+*	deviation:	the average absolute difference between a change and the trend, a robust measure of how much
+*				the changes scatter, which a single outlier moves far less than a variance would.
+* An altitude is wild when its change differs from the trend by more than sensitivity times the deviation, and by
+* more than the minimum jump (so a flight that has been perfectly steady does not turn every small change into a
+* wild point). A wild altitude is replaced by the previous altitude plus the trend. Like JumpDetector, the averages
+* are updated with the corrected altitudes, so a wild point does not spoil them.
+*
+* The averages weigh a change by alpha = 2 / (window + 1) and the older ones by (1 - alpha), which gives an average
+* over about the last window frames. Each altitude costs a few additions and multiplications, whatever the window.
+* Values that are not finite (NaN or infinite) are not altitudes: they are passed through and not learnt from.
+* Parameters:
+* window:		The number of frames the averages are taken over, about.
+* sensitivity:	How many deviations from the trend a change may be before the altitude is wild.
+* minimumJump:	How far from the trend a change must be at least before the altitude is wild.
+* Internal Methods:
+*	double correct(double altitude)
+*	WildPointDetector copy()
+*	boolean sameStateAs(WildPointDetector other)
+******************************************************************************************************************/
+
+class EwmaDetector implements WildPointDetector
+{
+	static final int DEFAULT_WINDOW = 64;
+	static final double DEFAULT_SENSITIVITY = 6;
+	static final double DEFAULT_MINIMUM_JUMP = 100;
+
+	private final int window;
+	private final double alpha;
+	private final double sensitivity;
+	private final double minimumJump;
+
+	private long seen = 0;				// finite altitudes seen so far
+	private double previous = 0;		// the last corrected altitude
+	private double trend = 0;			// EWMA of the changes
+	private double deviation = 0;		// EWMA of the absolute difference between a change and the trend
+
+	EwmaDetector()
+	{
+		this(DEFAULT_WINDOW, DEFAULT_SENSITIVITY, DEFAULT_MINIMUM_JUMP);
+	}
+
+	EwmaDetector(int window, double sensitivity, double minimumJump)
+	{
+		if (window < 1)
+		{
+			throw new IllegalArgumentException("Window must be at least one frame: " + window);
+		}
+		this.window = window;
+		this.alpha = 2.0 / (window + 1);
+		this.sensitivity = sensitivity;
+		this.minimumJump = minimumJump;
+	}
+
+	public double correct(double altitude)
+	{
+		if (!Double.isFinite(altitude))
+		{
+			return altitude;
+		}
+		if (seen++ == 0)
+		{
+			previous = altitude;	// met first frame, nothing to compare with
+			return altitude;
+		}
+
+		double corrected = altitude;
+		double change = altitude - previous;
+		if (Math.abs(change - trend) > Math.max(sensitivity * deviation, minimumJump))
+		{
+			corrected = previous + trend;
+			change = trend;
+		}
+
+		if (seen == 2)
+		{
+			trend = change;		// the first change starts the averages
+		}
+		else
+		{
+			deviation += alpha * (Math.abs(change - trend) - deviation);
+			trend += alpha * (change - trend);
+		}
+		previous = corrected;
+		return corrected;
+	}
+
+	public WildPointDetector copy()
+	{
+		EwmaDetector copy = new EwmaDetector(window, sensitivity, minimumJump);
+		copy.seen = seen;
+		copy.previous = previous;
+		copy.trend = trend;
+		copy.deviation = deviation;
+		return copy;
+	}
+
+	public boolean sameStateAs(WildPointDetector other)
+	{
+		if (!(other instanceof EwmaDetector))
+		{
+			return false;
+		}
+		EwmaDetector that = (EwmaDetector) other;
+		return window == that.window
+				&& Double.doubleToLongBits(sensitivity) == Double.doubleToLongBits(that.sensitivity)
+				&& Double.doubleToLongBits(minimumJump) == Double.doubleToLongBits(that.minimumJump)
+				&& Math.min(seen, 2) == Math.min(that.seen, 2)
+				&& Double.doubleToLongBits(previous) == Double.doubleToLongBits(that.previous)
+				&& Double.doubleToLongBits(trend) == Double.doubleToLongBits(that.trend)
+				&& Double.doubleToLongBits(deviation) == Double.doubleToLongBits(that.deviation);
+	}
+}
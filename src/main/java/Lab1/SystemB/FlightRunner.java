@@ -0,0 +1,160 @@
+/******************************************************************************************************************
+* File:FlightRunner.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Many flights through SystemB in one JVM.
+*
+* Description:
+* This program runs every flight (.dat file) in a directory through the SystemB pipeline, several flights at the
+* same time in one JVM. Each flight gets a pipeline of its own (SourceFilter -> MiddleFilter -> SinkFilter and
+* WildPointsSinkFilter) with the middle and sink filters fused onto the source, so a flight runs as one task on one
+* thread. The tasks run on a pool with a fixed number of threads, which bounds how many flights are processed at
+* once; the others wait in the pool's queue. Every MiddleFilter has detectors of its own, so the flights do not
+* see each other's altitudes.
+*
+* The CSV files of a flight are written to a directory of its own, named after the flight's file, so the flights
+* do not overwrite each other's OutputB.csv and WildPoints.csv:
+*	<output dir>/<flight>/OutputB.csv
+*	<output dir>/<flight>/WildPoints.csv
+* The time and throughput of every flight are printed in the order of the files, then the throughput of all the
+* flights together.
+*
+* Usage: java FlightRunner [input dir] [output dir] [flights at once]
+*	The defaults are ../DataSets, Flights and one flight per processor.
+******************************************************************************************************************/
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class FlightRunner
+{
+	private static final int RING_CAPACITY = 8 * 1024;	// only used if a filter cannot be fused
+
+	public static void main(String[] argv) throws Exception
+	{
+		Path inputDir = Path.of(argv.length > 0 ? argv[0] : "../DataSets");
+		Path outputDir = Path.of(argv.length > 1 ? argv[1] : "Flights");
+		int flightsAtOnce = argv.length > 2 ? Integer.parseInt(argv[2]) : Runtime.getRuntime().availableProcessors();
+
+		if (!Files.isDirectory(inputDir))
+		{
+			System.out.println("No directory " + inputDir);
+			System.out.println("Usage: java FlightRunner [input dir] [output dir] [flights at once]");
+			return;
+		}
+
+		List<Path> flights;
+		try (Stream<Path> files = Files.list(inputDir))
+		{
+			flights = files.filter(file -> file.getFileName().toString().endsWith(".dat")).sorted()
+					.collect(Collectors.toList());
+		}
+		if (flights.isEmpty())
+		{
+			System.out.println("No .dat files in " + inputDir);
+			return;
+		}
+
+		// The filters report on System.out; keep that off the console, which gets one line per flight.
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+		ExecutorService pool = Executors.newFixedThreadPool(flightsAtOnce);
+		long started = System.nanoTime();
+		long totalBytes = 0;
+		int failed = 0;
+		try
+		{
+			List<Future<Long>> runs = new ArrayList<>();
+			for (Path flight : flights)
+			{
+				Path flightDir = Files.createDirectories(outputDir.resolve(flightName(flight)));
+				runs.add(pool.submit(() -> runFlight(flight, flightDir)));
+			}
+
+			for (int i = 0; i < flights.size(); i++)
+			{
+				try
+				{
+					long nanos = runs.get(i).get();
+					long bytes = flights.get(i).toFile().length();
+					totalBytes += bytes;
+					console.printf("%-30s %12d bytes %8.2f s %10.1f MB/s%n", flights.get(i).getFileName(), bytes,
+							nanos / 1e9, bytes / (nanos / 1e9) / (1024 * 1024));
+				}
+				catch (ExecutionException e)
+				{
+					failed++;
+					console.println(flights.get(i).getFileName() + ": failed: " + e.getCause());
+				}
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+			System.setOut(console);
+		}
+
+		double seconds = (System.nanoTime() - started) / 1e9;
+		System.out.printf("%d flights (%d failed), %d at once: %d bytes in %.2f s, %.1f MB/s, %.1f flights/s%n",
+				flights.size(), failed, flightsAtOnce, totalBytes, seconds, totalBytes / seconds / (1024 * 1024),
+				(flights.size() - failed) / seconds);
+		if (failed > 0)
+		{
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return the name of the flight's file without the .dat extension.
+	 */
+	private static String flightName(Path flight)
+	{
+		String name = flight.getFileName().toString();
+		return name.substring(0, name.length() - ".dat".length());
+	}
+
+	/**
+	 * Run one flight through a pipeline of its own on this thread.
+	 *
+	 * @return how long it took in nanoseconds.
+	 * @throws Exception the first failure of a filter, if the flight could not be read or a file not written.
+	 */
+	private static long runFlight(Path flight, Path flightDir) throws Exception
+	{
+		long started = System.nanoTime();
+
+		SourceFilter source = new SourceFilter(flight.toString());
+		MiddleFilter middle = new MiddleFilter();
+		SinkFilter sink = new SinkFilter(flightDir.resolve("OutputB.csv").toString(), AsyncFileWriter.Sync.NONE);
+		WildPointsSinkFilter wildPoints = new WildPointsSinkFilter(flightDir.resolve("WildPoints.csv").toString(),
+				AsyncFileWriter.Sync.NONE);
+
+		TeeConnector tee = new TeeConnector(RING_CAPACITY, TeeConnector.Policy.BLOCK, 0);
+		sink.ConnectFused(middle, tee.branch());
+		wildPoints.ConnectFused(middle, tee.branch());
+		middle.ConnectFused(source, new RingBufferConnector(RING_CAPACITY));
+
+		source.run();	// the fused filters run inside the source, on this thread
+		for (FilterFramework filter : List.of(source, middle, sink, wildPoints))
+		{
+			if (filter.Failure() != null)
+			{
+				throw filter.Failure();
+			}
+		}
+		return System.nanoTime() - started;
+	}
+}
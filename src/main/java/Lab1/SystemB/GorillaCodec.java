@@ -0,0 +1,475 @@
+/******************************************************************************************************************
+* File:GorillaCodec.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Compressed flight data in the manner of Facebook's Gorilla time series database.
+*
+* Description:
+* A .dat file spends 12 bytes on every measurement, 60 bytes a frame, although consecutive frames differ little.
+* This codec packs the frames of a flight into a bit stream instead:
+*	- the time stamp (ID 0) of a frame is stored as the change in the difference from the time stamp before it
+*	  (delta of delta), which is a single 0 bit when the frames come at a steady rate;
+*	- every other measurement is stored as the XOR of its bits with the previous value of the same ID, which is a
+*	  single 0 bit if the value did not change and otherwise only the bits between the leading and trailing zeros
+*	  of the XOR;
+*	- the IDs of a frame are stored as a set (a long with a bit per ID), and as a single 0 bit when they are the
+*	  same as in the frame before. A frame whose IDs are not increasing from 0 to 63 (one with a flagged ID, say)
+*	  has its IDs listed instead, and its values of IDs outside 0 to 63 stored as they are.
+* A compressed file (.gfd) is MAGIC followed by blocks of up to BLOCK_FRAMES frames. A block is the number of frames
+* in it, the number of bits and the bits. Every block starts from scratch, so it can be decoded without the ones
+* before it and neither side holds more than a block in memory. Decoding gives back exactly the measurements that
+* were encoded, in the same order.
+* Parameters: None
+* Internal Methods:
+*	Encoder: void frame(int[] ids, long[] values, int count), int finish(), byte[] bytes(), void reset()
+*	Decoder: void reset(byte[] data, int length), int frame(), int[] ids(), long[] values()
+******************************************************************************************************************/
+
+import java.util.Arrays;
+
+final class GorillaCodec
+{
+	static final int MAGIC = 0x47464431;	// "GFD1"
+	static final int BLOCK_FRAMES = 4096;
+	static final String SUFFIX = ".gfd";
+
+	private static final int COLUMNS = 64;	// IDs with a column of their own
+
+	private GorillaCodec() { }
+
+	/**
+	 * @return true if a frame's IDs can be stored as a set: increasing and from 0 to 63.
+	 */
+	private static boolean regular(int[] ids, int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			if (ids[i] < 0 || ids[i] >= COLUMNS || (i > 0 && ids[i] <= ids[i - 1]))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Encodes the frames of one block into bits.
+	 */
+	static final class Encoder
+	{
+		private byte[] buffer = new byte[64 * 1024];
+		private int length;				// whole bytes in the buffer
+		private long pending;			// bits not yet in the buffer, in the low pendingBits bits
+		private int pendingBits;
+		private int bits;				// bits written to the block
+
+		private long layout;			// the ID set of the previous frame
+		private boolean timed;			// a time stamp was written to the block
+		private long previousTime;
+		private long previousDelta;
+		private final long[] previousValue = new long[COLUMNS];
+		private final int[] previousLeading = new int[COLUMNS];
+		private final int[] previousTrailing = new int[COLUMNS];
+
+		Encoder()
+		{
+			reset();
+		}
+
+		/**
+		 * Start a new block.
+		 */
+		void reset()
+		{
+			length = 0;
+			pending = 0;
+			pendingBits = 0;
+			bits = 0;
+			layout = 0;
+			timed = false;
+			previousTime = 0;
+			previousDelta = 0;
+			Arrays.fill(previousValue, 0);
+			Arrays.fill(previousLeading, -1);
+			Arrays.fill(previousTrailing, 0);
+		}
+
+		/**
+		 * Encode one frame: the first count measurements of ids and values. A frame starts with its time stamp,
+		 * unless it is made of the measurements before the first time stamp of the stream.
+		 */
+		void frame(int[] ids, long[] values, int count)
+		{
+			if (regular(ids, count))
+			{
+				long set = 0;
+				for (int i = 0; i < count; i++)
+				{
+					set |= 1L << ids[i];
+				}
+				if (set == layout)
+				{
+					write(0, 1);
+				}
+				else
+				{
+					write(0b10, 2);
+					write(set, 64);
+					layout = set;
+				}
+			}
+			else
+			{
+				write(0b11, 2);
+				write(count, 32);
+				for (int i = 0; i < count; i++)
+				{
+					write(ids[i], 32);
+				}
+			}
+
+			for (int i = 0; i < count; i++)
+			{
+				if (ids[i] == 0)
+				{
+					time(values[i]);
+				}
+				else if (ids[i] > 0 && ids[i] < COLUMNS)
+				{
+					value(ids[i], values[i]);
+				}
+				else
+				{
+					write(values[i], 64);
+				}
+			}
+		}
+
+		private void time(long time)
+		{
+			if (!timed)
+			{
+				write(time, 64);
+				timed = true;
+			}
+			else
+			{
+				long delta = time - previousTime;
+				long deltaOfDelta = delta - previousDelta;
+				if (deltaOfDelta == 0)
+				{
+					write(0, 1);
+				}
+				else if (deltaOfDelta >= -64 && deltaOfDelta < 64)
+				{
+					write(0b10, 2);
+					write(deltaOfDelta, 7);
+				}
+				else if (deltaOfDelta >= -256 && deltaOfDelta < 256)
+				{
+					write(0b110, 3);
+					write(deltaOfDelta, 9);
+				}
+				else if (deltaOfDelta >= -2048 && deltaOfDelta < 2048)
+				{
+					write(0b1110, 4);
+					write(deltaOfDelta, 12);
+				}
+				else
+				{
+					write(0b1111, 4);
+					write(deltaOfDelta, 64);
+				}
+				previousDelta = delta;
+			}
+			previousTime = time;
+		}
+
+		private void value(int id, long value)
+		{
+			long xor = value ^ previousValue[id];
+			previousValue[id] = value;
+			if (xor == 0)
+			{
+				write(0, 1);
+				return;
+			}
+
+			int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+			int trailing = Long.numberOfTrailingZeros(xor);
+			if (previousLeading[id] >= 0 && leading >= previousLeading[id] && trailing >= previousTrailing[id])
+			{
+				// the bits that changed fit in the window of the previous value
+				write(0b10, 2);
+				write(xor >>> previousTrailing[id], 64 - previousLeading[id] - previousTrailing[id]);
+			}
+			else
+			{
+				int meaningful = 64 - leading - trailing;
+				write(0b11, 2);
+				write(leading, 5);
+				write(meaningful & 63, 6);	// 64 is written as 0
+				write(xor >>> trailing, meaningful);
+				previousLeading[id] = leading;
+				previousTrailing[id] = trailing;
+			}
+		}
+
+		/**
+		 * Write the low count bits of value, the highest first.
+		 */
+		private void write(long value, int count)
+		{
+			if (count > 32)
+			{
+				write(value >>> 32, count - 32);
+				count = 32;
+			}
+			pending = (pending << count) | (value & ((1L << count) - 1));
+			pendingBits += count;
+			bits += count;
+			while (pendingBits >= 8)
+			{
+				pendingBits -= 8;
+				put((byte) (pending >>> pendingBits));
+			}
+			pending &= (1L << pendingBits) - 1;
+		}
+
+		private void put(byte b)
+		{
+			if (length == buffer.length)
+			{
+				buffer = Arrays.copyOf(buffer, length * 2);
+			}
+			buffer[length++] = b;
+		}
+
+		/**
+		 * Finish the block: the last byte is padded with zeros.
+		 *
+		 * @return the number of bits in the block.
+		 */
+		int finish()
+		{
+			if (pendingBits > 0)
+			{
+				put((byte) (pending << (8 - pendingBits)));
+				pending = 0;
+				pendingBits = 0;
+			}
+			return bits;
+		}
+
+		/**
+		 * @return the finished block, in the first (bits + 7) / 8 bytes of the array.
+		 */
+		byte[] bytes()
+		{
+			return buffer;
+		}
+	}
+
+	/**
+	 * Decodes the frames of one block.
+	 */
+	static final class Decoder
+	{
+		private byte[] data;
+		private int length;				// bytes of the block in data
+		private int position;			// the next byte to read
+		private long pending;			// bits read but not used, in the low pendingBits bits
+		private int pendingBits;
+
+		private int[] ids = new int[COLUMNS];
+		private long[] values = new long[COLUMNS];
+		private int count;				// measurements in the previous frame, whose IDs are still in ids
+		private boolean timed;
+		private long previousTime;
+		private long previousDelta;
+		private final long[] previousValue = new long[COLUMNS];
+		private final int[] previousLeading = new int[COLUMNS];
+		private final int[] previousTrailing = new int[COLUMNS];
+		private final int[] layout = new int[COLUMNS];	// the IDs of the last frame stored as a set
+		private int layoutCount;
+
+		/**
+		 * Start decoding a block: the first length bytes of data.
+		 */
+		void reset(byte[] data, int length)
+		{
+			this.data = data;
+			this.length = length;
+			position = 0;
+			pending = 0;
+			pendingBits = 0;
+			count = 0;
+			layoutCount = 0;
+			timed = false;
+			previousTime = 0;
+			previousDelta = 0;
+			Arrays.fill(previousValue, 0);
+			Arrays.fill(previousLeading, -1);
+			Arrays.fill(previousTrailing, 0);
+		}
+
+		/**
+		 * Decode the next frame of the block into ids() and values().
+		 *
+		 * @return the number of measurements in the frame.
+		 */
+		int frame()
+		{
+			if (read(1) == 0)
+			{
+				count = layoutCount;
+				System.arraycopy(layout, 0, ids, 0, count);
+			}
+			else if (read(1) == 0)
+			{
+				layoutCount = 0;
+				for (long set = read(64); set != 0; set &= set - 1)
+				{
+					layout[layoutCount++] = Long.numberOfTrailingZeros(set);
+				}
+				count = layoutCount;
+				System.arraycopy(layout, 0, ids, 0, count);
+			}
+			else
+			{
+				count = (int) read(32);
+				if (count > ids.length)
+				{
+					ids = new int[count];
+					values = new long[count];
+				}
+				for (int i = 0; i < count; i++)
+				{
+					ids[i] = (int) read(32);
+				}
+			}
+
+			for (int i = 0; i < count; i++)
+			{
+				int id = ids[i];
+				if (id == 0)
+				{
+					values[i] = time();
+				}
+				else if (id > 0 && id < COLUMNS)
+				{
+					values[i] = value(id);
+				}
+				else
+				{
+					values[i] = read(64);
+				}
+			}
+			return count;
+		}
+
+		int[] ids()
+		{
+			return ids;
+		}
+
+		long[] values()
+		{
+			return values;
+		}
+
+		private long time()
+		{
+			if (!timed)
+			{
+				timed = true;
+				previousTime = read(64);
+				return previousTime;
+			}
+
+			long deltaOfDelta;
+			if (read(1) == 0)
+			{
+				deltaOfDelta = 0;
+			}
+			else if (read(1) == 0)
+			{
+				deltaOfDelta = signed(read(7), 7);
+			}
+			else if (read(1) == 0)
+			{
+				deltaOfDelta = signed(read(9), 9);
+			}
+			else if (read(1) == 0)
+			{
+				deltaOfDelta = signed(read(12), 12);
+			}
+			else
+			{
+				deltaOfDelta = read(64);
+			}
+			previousDelta += deltaOfDelta;
+			previousTime += previousDelta;
+			return previousTime;
+		}
+
+		private long value(int id)
+		{
+			if (read(1) != 0)
+			{
+				long xor;
+				if (read(1) == 0)
+				{
+					xor = read(64 - previousLeading[id] - previousTrailing[id]) << previousTrailing[id];
+				}
+				else
+				{
+					int leading = (int) read(5);
+					int meaningful = (int) read(6);
+					if (meaningful == 0)
+					{
+						meaningful = 64;
+					}
+					int trailing = 64 - leading - meaningful;
+					xor = read(meaningful) << trailing;
+					previousLeading[id] = leading;
+					previousTrailing[id] = trailing;
+				}
+				previousValue[id] ^= xor;
+			}
+			return previousValue[id];
+		}
+
+		private static long signed(long value, int count)
+		{
+			return (value << (64 - count)) >> (64 - count);
+		}
+
+		/**
+		 * Read the next count bits, the highest first.
+		 */
+		private long read(int count)
+		{
+			if (count > 32)
+			{
+				long high = read(count - 32);
+				return (high << 32) | read(32);
+			}
+			while (pendingBits < count)
+			{
+				if (position == length)
+				{
+					throw new IllegalStateException("Compressed block ends in the middle of a frame");
+				}
+				pending = (pending << 8) | (data[position++] & 0xFF);
+				pendingBits += 8;
+			}
+			pendingBits -= count;
+			long value = (pending >>> pendingBits) & ((1L << count) - 1);
+			pending &= (1L << pendingBits) - 1;
+			return value;
+		}
+	}
+}
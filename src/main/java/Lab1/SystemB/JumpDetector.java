@@ -0,0 +1,136 @@
+/******************************************************************************************************************
+* File:JumpDetector.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.1 - Threshold made a parameter; batch mode added.
+*   1.0 - Wild altitude detection, moved out of MiddleFilter.
+*
+* Description:
+* This detector finds wild jumps in the altitude and works out the value that replaces them. An altitude that
+* differs from the previous altitude by more than the threshold (100 by default) is wild; it is replaced by the
+* previous altitude on the second frame and by the average of the two previous altitudes after that. The previous
+* altitudes are the values after replacement, so a detector remembers the last two of them.
+*
+* In batch mode (correctAll()) each altitude still depends on the corrected altitude before it, but only through a
+* jump: an altitude within the threshold of the one before it is never replaced. Since the altitudes are corrected
+* in place, the array always holds the corrected previous altitude, and a JumpScan can look for the next jump over
+* many altitudes at once, with the Vector API if it is there. The altitudes up to that jump are left as they are
+* and only the jump itself goes through correct(). As wild jumps are rare, almost all altitudes are handled by the
+* scan.
+* Parameters:
+* threshold:	How far an altitude may be from the previous one before it is wild.
+* Internal Methods:
+*	double correct(double altitude)
+*	void correctAll(double[] altitudes, int from, int to)
+*	WildPointDetector copy()
+*	boolean sameStateAs(WildPointDetector other)
+******************************************************************************************************************/
+
+class JumpDetector implements WildPointDetector
+{
+	static final double DEFAULT_THRESHOLD = 100;
+
+	private final double threshold;
+	private double preAltitude = Double.MAX_VALUE;
+	private double ppreAltiture = Double.MAX_VALUE;
+
+	JumpDetector()
+	{
+		this(DEFAULT_THRESHOLD);
+	}
+
+	JumpDetector(double threshold)
+	{
+		this.threshold = threshold;
+	}
+
+	public double correct(double altitude)
+	{
+		double currentAltitude = updateAltWhenWildJumps(altitude);
+
+		// update
+		ppreAltiture = preAltitude;
+		preAltitude = currentAltitude;
+
+		return currentAltitude;
+	}
+
+	public void correctAll(double[] altitudes, int from, int to)
+	{
+		if (from >= to)
+		{
+			return;
+		}
+		// The first altitude is compared with the state, the rest with the corrected altitude before them.
+		altitudes[from] = correct(altitudes[from]);
+		int i = from + 1;
+		while (i < to)
+		{
+			int jump = JumpScan.INSTANCE.firstJump(altitudes, i, to, threshold);
+			if (jump > i)
+			{
+				// altitudes[i] up to altitudes[jump - 1] are correct as they are
+				ppreAltiture = altitudes[jump - 2];
+				preAltitude = altitudes[jump - 1];
+				i = jump;
+			}
+			if (i < to)
+			{
+				altitudes[i] = correct(altitudes[i]);
+				i++;
+			}
+		}
+	}
+
+	public WildPointDetector copy()
+	{
+		JumpDetector copy = new JumpDetector(threshold);
+		copy.preAltitude = preAltitude;
+		copy.ppreAltiture = ppreAltiture;
+		return copy;
+	}
+
+	public boolean sameStateAs(WildPointDetector other)
+	{
+		if (!(other instanceof JumpDetector))
+		{
+			return false;
+		}
+		JumpDetector that = (JumpDetector) other;
+		return Double.doubleToLongBits(threshold) == Double.doubleToLongBits(that.threshold)
+				&& Double.doubleToLongBits(preAltitude) == Double.doubleToLongBits(that.preAltitude)
+				&& Double.doubleToLongBits(ppreAltiture) == Double.doubleToLongBits(that.ppreAltiture);
+	}
+
+	/** Convert the value of `incorrect` altitude to be correct, if needed. If the input value itself is
+	 *  defined as correct, the function will simply return its identical value.
+	 *
+	 * @param now:  double-type value of altitude
+	 *
+	 * @return: the original or updated altitude value, if needed
+	 */
+   private double updateAltWhenWildJumps(double now) {
+	   if (preAltitude == Double.MAX_VALUE) {
+			// met first frame, no chance to update, so do nothing here
+
+	   } else {
+		   if (ppreAltiture == Double.MAX_VALUE) {
+			   // met second frame
+			   if (Math.abs(now - preAltitude) > threshold) {
+				   // simply replace the current with the previous
+				   now = preAltitude;
+			   }
+
+		   } else {
+			   // met third frame or afterwards
+			   if (Math.abs(now - preAltitude) > threshold) {
+				   return (preAltitude + ppreAltiture) / 2.0;
+			   }
+		   }
+	   }
+
+	   return now;
+   }
+}
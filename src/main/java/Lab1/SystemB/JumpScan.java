@@ -0,0 +1,70 @@
+/******************************************************************************************************************
+* File:JumpScan.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Search for the next altitude jump, scalar or with the Vector API.
+*
+* Description:
+* This is the inner loop of JumpDetector's batch mode: it finds the first altitude in an array that is not within
+* a threshold of the altitude before it. INSTANCE is the fastest implementation this JVM can run:
+*	VectorJumpScan:	compares a whole vector of altitudes with the altitudes before them at once, using the
+*					incubating Vector API (jdk.incubator.vector). It lives in vector/ because it only compiles
+*					and runs with that module added:
+*						javac *.java
+*						javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorJumpScan.java
+*						java --add-modules jdk.incubator.vector Plumber
+*	ScalarJumpScan:	a plain loop, used when VectorJumpScan was not compiled or the module was not added.
+* Both find the same jump: a difference that is NaN counts as a jump, so JumpDetector decides what to do with it.
+* Parameters: None
+* Internal Methods:
+*	int firstJump(double[] altitudes, int from, int to, double threshold)
+******************************************************************************************************************/
+
+interface JumpScan
+{
+	JumpScan INSTANCE = Selector.select();
+
+	/**
+	 * @return the first index i from from (at least 1) up to to for which |altitudes[i] - altitudes[i - 1]| is not
+	 * at most threshold, or to if there is none.
+	 */
+	int firstJump(double[] altitudes, int from, int to, double threshold);
+
+	/** The plain loop. */
+	final class ScalarJumpScan implements JumpScan
+	{
+		public int firstJump(double[] altitudes, int from, int to, double threshold)
+		{
+			for (int i = from; i < to; i++)
+			{
+				if (!(Math.abs(altitudes[i] - altitudes[i - 1]) <= threshold))
+				{
+					return i;
+				}
+			}
+			return to;
+		}
+	}
+
+	/** Picks VectorJumpScan if it can be loaded, otherwise ScalarJumpScan. */
+	final class Selector
+	{
+		private Selector()
+		{
+		}
+
+		static JumpScan select()
+		{
+			try
+			{
+				return (JumpScan) Class.forName("VectorJumpScan").getDeclaredConstructor().newInstance();
+			}
+			catch (ReflectiveOperationException | LinkageError Error)
+			{
+				return new ScalarJumpScan();	// not compiled, or jdk.incubator.vector not added
+			}
+		}
+	}
+}
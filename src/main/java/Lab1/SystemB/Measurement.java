@@ -0,0 +1,28 @@
+/******************************************************************************************************************
+* File:Measurement.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Measurement holder for the measurement ports of FilterFramework.
+*
+* Description:
+* A single decoded measurement: its ID and the raw 8 byte value. FilterFramework.ReadMeasurement() fills in and
+* returns the same instance every time it is called, so reading the stream does not allocate. A caller that needs
+* to keep a measurement around must copy the fields out before the next read.
+* Parameters:
+* id:		The measurement ID (0 is time, 1 to 5 are measurements).
+* value:	The measurement value. For ID 0 this is the time in milliseconds since Epoch, otherwise the bits of a
+*			double that can be converted with doubleValue().
+******************************************************************************************************************/
+
+final class Measurement
+{
+	int id;
+	long value;
+
+	double doubleValue()
+	{
+		return Double.longBitsToDouble(value);
+	}
+}
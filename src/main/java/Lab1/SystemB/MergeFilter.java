@@ -0,0 +1,287 @@
+/******************************************************************************************************************
+* File:MergeFilter.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - k-way merge of several measurement streams in time order.
+*
+* Description:
+* This filter has any number of input ports and merges the frames arriving on them into one stream ordered by the
+* time stamp (ID 0) that starts every frame. It is used when the telemetry of one flight comes from several
+* recorders, each with its own .dat file and SourceFilter: the merged stream looks like the data of a single
+* recorder to the filters downstream. Each input must be in time order itself, as a recorder's file is.
+*
+* Only the frame at the head of each input is looked at. The inputs are kept in a binary heap of input numbers
+* ordered by the time stamp of their head frame (held in a long array, so nothing is boxed); the filter sends the
+* head frame of the input at the top of the heap, reads that input's next time stamp and moves it down the heap.
+* Frames are copied from the input's buffer straight to the output port, so no more than a buffer per input is
+* held at any time. Frames with equal time stamps are sent in the order of their inputs, which makes the output
+* the same on every run. Measurements before the first time stamp of an input are sent before anything else.
+*
+* Parameters: None. The inputs are connected with ConnectInput(), in the order they should win ties.
+* Internal Methods:
+*	public void ConnectInput( FilterFramework Filter, Connector Pipe )
+*	public long ConsumedIds( long Downstream )
+******************************************************************************************************************/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MergeFilter extends FilterFramework
+{
+	private final List<Input> inputs = new ArrayList<>();
+
+	// Heap of input numbers, smallest head time stamp first; headTime[i] is the time stamp of input i's head frame.
+	private int[] heap;
+	private long[] headTime;
+	private int heapSize;
+
+	/***************************************************************************
+	* CONCRETE METHOD:: ConnectInput
+	* Purpose: This method adds an input port to the merge filter and connects
+	* it to the output port of the upstream filter through the given connector.
+	*
+	* Arguments:
+	* FilterFramework - this is the upstream filter.
+	* Connector - this is the pipe that joins the two filters.
+	* Returns: void
+	* Exceptions: none
+	****************************************************************************/
+	void ConnectInput( FilterFramework Filter, Connector Pipe )
+	{
+		inputs.add(new Input(ConnectInputPort(Filter, Pipe), Filter));
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: ConsumedIds
+	* Purpose: The merge filter reads what the filters downstream of it read,
+	* and the time stamps it orders the frames by.
+	****************************************************************************/
+	long ConsumedIds( long Downstream )
+	{
+		return Downstream | MeasurementCodec.idSet(0);
+	}
+
+	public void run()
+	{
+		long frameswritten = 0;		// Number of frames written to the stream.
+
+		System.out.print( "\n" + this.getName() + "::Merge Reading " + inputs.size() + " inputs ");
+
+		heap = new int[inputs.size()];
+		headTime = new long[inputs.size()];
+		heapSize = 0;
+		for (int i = 0; i < inputs.size(); i++)
+		{
+			if (inputs.get(i).fill())
+			{
+				// A stream that does not start with a time stamp has its leading measurements sent first.
+				headTime[i] = inputs.get(i).headId() == 0 ? inputs.get(i).headValue() : Long.MIN_VALUE;
+				heap[heapSize++] = i;
+				siftUp(heapSize - 1);
+			}
+		}
+
+		while (heapSize > 0)
+		{
+			int top = heap[0];
+			Input input = inputs.get(top);
+			frameswritten++;
+			if (input.sendFrame())
+			{
+				headTime[top] = input.headValue();
+				siftDown(0);
+			}
+			else
+			{
+				heap[0] = heap[--heapSize];
+				siftDown(0);
+			}
+		}
+
+		for (Input input : inputs)
+		{
+			input.close();
+		}
+		ClosePorts();
+		System.out.print( "\n" + this.getName() + "::Merge Exiting; bytes read: " + totalBytesRead() + " frames written: " + frameswritten );
+	}
+
+	private long totalBytesRead()
+	{
+		long total = 0;
+		for (Input input : inputs)
+		{
+			total += input.bytesread;
+		}
+		return total;
+	}
+
+	/**
+	 * @return true if input a's head frame goes before input b's.
+	 */
+	private boolean before(int a, int b)
+	{
+		return headTime[a] < headTime[b] || (headTime[a] == headTime[b] && a < b);
+	}
+
+	private void siftUp(int index)
+	{
+		int item = heap[index];
+		while (index > 0)
+		{
+			int parent = (index - 1) >>> 1;
+			if (!before(item, heap[parent]))
+			{
+				break;
+			}
+			heap[index] = heap[parent];
+			index = parent;
+		}
+		heap[index] = item;
+	}
+
+	private void siftDown(int index)
+	{
+		if (heapSize == 0)
+		{
+			return;
+		}
+		int item = heap[index];
+		int half = heapSize >>> 1;
+		while (index < half)
+		{
+			int child = 2 * index + 1;
+			if (child + 1 < heapSize && before(heap[child + 1], heap[child]))
+			{
+				child++;
+			}
+			if (!before(heap[child], item))
+			{
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = item;
+	}
+
+	/** One input port with the part of its stream that has been read but not sent yet. */
+	private final class Input
+	{
+		private final InputStream port;
+		private final FilterFramework upstream;
+		private final byte[] buffer = new byte[MeasurementCodec.RECORD_LENGTH * 341];
+		private int start = 0;		// first byte not sent yet
+		private int end = 0;		// one past the last byte read
+		private long bytesread = 0;
+
+		Input(InputStream port, FilterFramework upstream)
+		{
+			this.port = port;
+			this.upstream = upstream;
+		}
+
+		int headId()
+		{
+			return MeasurementCodec.decodeId(buffer, start);
+		}
+
+		long headValue()
+		{
+			return MeasurementCodec.decodeValue(buffer, start);
+		}
+
+		/**
+		 * Send the frame at the head of this input: its first measurement and every measurement up to the next
+		 * time stamp or the end of the stream.
+		 *
+		 * @return true if another frame follows, false if the stream has ended.
+		 */
+		boolean sendFrame()
+		{
+			int from = start;
+			start += MeasurementCodec.RECORD_LENGTH;
+			while (true)
+			{
+				while (end - start >= MeasurementCodec.RECORD_LENGTH)
+				{
+					if (MeasurementCodec.decodeId(buffer, start) == 0)
+					{
+						WriteFilterOutputPort(buffer, from, start - from);
+						return true;
+					}
+					start += MeasurementCodec.RECORD_LENGTH;
+				}
+				WriteFilterOutputPort(buffer, from, start - from);
+				if (!fill())
+				{
+					return false;
+				}
+				from = start;
+			}
+		}
+
+		/**
+		 * Make sure a whole measurement is buffered at start, moving the unsent bytes to the front of the buffer
+		 * and reading more from the port when needed. Before it blocks, the output port is flushed so the
+		 * filter downstream is not left waiting on data this filter holds.
+		 *
+		 * @return false if the stream ended first; a partial measurement at its end is dropped.
+		 */
+		boolean fill()
+		{
+			if (end - start >= MeasurementCodec.RECORD_LENGTH)
+			{
+				return true;
+			}
+			System.arraycopy(buffer, start, buffer, 0, end - start);
+			end -= start;
+			start = 0;
+
+			try
+			{
+				while (end < MeasurementCodec.RECORD_LENGTH)
+				{
+					if (port.available() < MeasurementCodec.RECORD_LENGTH - end)
+					{
+						FlushFilterOutputPort();
+					}
+					int count = port.read(buffer, end, buffer.length - end);
+					if (count < 0)
+					{
+						return false;
+					}
+					end += count;
+					bytesread += count;
+				}
+			}
+			catch( IOException Error )
+			{
+				// As on the single input port, a broken pipe from an upstream filter that has finished is
+				// just the end of its stream.
+				if (upstream.IsRunning())
+				{
+					System.out.println( "\n" + MergeFilter.this.getName() + " Pipe read error::" + Error );
+				}
+				return false;
+			}
+			return true;
+		}
+
+		void close()
+		{
+			try
+			{
+				port.close();
+			}
+			catch( IOException Error )
+			{
+				System.out.println( "\n" + MergeFilter.this.getName() + " ClosePorts error::" + Error );
+			}
+		}
+	}
+}
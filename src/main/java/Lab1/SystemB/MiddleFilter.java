@@ -1,20 +1,3 @@
-import com.sun.jdi.LongType;
-
-import java.io.ByteArrayInputStream;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.math.RoundingMode;
-import java.nio.ByteBuffer;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.sql.Time;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.List;
-import java.util.stream.Stream;
-
 /******************************************************************************************************************
 * File:MiddleFilter.java
 * Project: Lab 1
@@ -27,201 +10,121 @@ import java.util.stream.Stream;
 *
 * Description:
 * This class serves as an example for how to use the FilterRemplate to create a standard filter. This particular
-* example is a simple "pass-through" filter that reads data from the filter's input port and writes data out the
-* filter's output port.
-* Parameters: None
-* Internal Methods: None
+* filter reads the measurements from its input port, checks the measurement IDs of its CorrectionRegistry for wild
+* values and writes the measurements out its output port. A wild value is replaced by what its detector gives: the
+* original value is sent with the ORIGINAL flag in its ID, right before the updated value with the CORRECTED flag.
+* The measurements are checked in batches (see WildPointBatch). A batch is sent on when it is full, and also when
+* the filter is about to wait for input, so a slow stream is not held back in a batch that is slow to fill.
+*
+* The filter reads what the filters downstream of it read, the time stamps and the IDs it checks (see
+* ConsumedIds), so a field that is checked reaches it even if no sink writes its column.
+* Parameters:
+* registry:		The detector of every measurement ID that is checked, the altitude's JumpDetector by default.
+* batchSize:	The number of measurements held back and checked at once.
+* Internal Methods:
+*	long ConsumedIds(long Downstream)
+*	void BeforeWaiting()
 ******************************************************************************************************************/
 
-public class MiddleFilter extends FilterFramework
+public class MiddleFilter extends FilterFramework implements FusableFilter
 {
-	private static double preAltitude = Double.MAX_VALUE;
-	private static double ppreAltiture = Double.MAX_VALUE;
+	private long bytesread = 0;					// Number of bytes read from the input file.
+	private long byteswritten = 0;				// Number of bytes written to the stream.
 
-	public void run()
-    {
-		int bytesread = 0;					// Number of bytes read from the input file.
-		int byteswritten = 0;				// Number of bytes written to the stream.
-		byte databyte = 0;					// The byte of data read from the file
-		int i;
-		int id;
-		int ID_LENGTH = 4;
-		long val; // aka. measurement
-		int VAL_LENGTH = 8;
-		double currentAltitude;
-		FileWriter csvWriter = null;
-		StringBuilder currentFrame = new StringBuilder();
-		boolean isAltChanged = false;
-		String outputPath = "WildPoints.csv";
-		Calendar timeStamp = Calendar.getInstance();
-		SimpleDateFormat timeStampFormat = new SimpleDateFormat("yyyy MM dd::hh:mm:ss");
-		DecimalFormat df = new DecimalFormat("0.00000");
-		df.setRoundingMode(RoundingMode.DOWN);
-
-		try {
-			if (Files.exists(Path.of(outputPath))) {
-				Files.delete(Path.of(outputPath));
-			}
-
-			csvWriter = new FileWriter(outputPath, true);  // set as append mod
-			String header = "Time,Velocity,Altitude,Pressure,Temperature\n";
-			csvWriter.append(header);
-		} catch (IOException | NullPointerException e) {
-			e.printStackTrace();
+	// Where the batch sends the measurements: out the output port.
+	private final FusableFilter output = new FusableFilter()
+	{
+		public void begin()
+		{
 		}
 
-
-		// Next we write a message to the terminal to let the world know we are alive...
-		System.out.print( "\n" + this.getName() + "::Middle Reading ");
-
-		while (true)
+		public void accept(int id, long val)
 		{
-			// Here we read a byte and write a byte
-			try
-			{
-				/* process each ID of current frame */
-				id = 0;
-				for (i=0; i<ID_LENGTH; i++ )
-				{
-					databyte = ReadFilterInputPort();	// This is where we read the byte from the stream...
-					id = id | (databyte & 0xFF);		// We append the byte on to ID...
-					if (i != ID_LENGTH-1)				// If this is not the last byte, then slide the
-					{									// previously appended byte to the left by one byte
-						id = id << 8;					// to make room for the next byte we append to the ID
-					}
-					bytesread++;						// Increment the byte count
-				}
-
-				/* Process each data of current frame */
-				val = 0;
-				for (i=0; i<VAL_LENGTH; i++ )
-				{
-					databyte = ReadFilterInputPort();
-					val = val | (databyte & 0xFF);	// We append the byte on to measurement...
-					if (i != VAL_LENGTH-1)					// If this is not the last byte, then slide the
-					{												// previously appended byte to the left by one byte
-						val = val << 8;				// to make room for the next byte we append to the
-						// measurement
-					}
-					bytesread++;									// Increment the byte count
-				}
-
-				if (id == 0) {
-					if (currentFrame.length() > 0) {
-						// ignore and reset
-						if (isAltChanged) {
-							// flush *previous* wild points frame as record to the local disk
-							currentFrame.append('\n');
-							csvWriter.write(currentFrame.toString());
-						}
-						currentFrame.setLength(0);  // reset
-						isAltChanged = false; // reset flag
-					}
-
-					timeStamp.setTimeInMillis(val);
-					currentFrame.append(timeStampFormat.format(timeStamp.getTime()));
-					currentFrame.append(',');
-				}
-
-				if (id == 1 || id == 3) {
-					currentFrame.append(df.format(Double.longBitsToDouble(val)));
-					currentFrame.append(',');
-				}
-
-				// check the alt of adjacent frame, see if it needs to revise
-				if (id == 2) {
-					currentAltitude = updateAltWhenWildJumps(Double.longBitsToDouble(val));
-					// note that should keep original value to wildpoints.csv
-					currentFrame.append(df.format(Double.longBitsToDouble(val)));
-					currentFrame.append(',');
-
+			WriteMeasurement(id, val);
+			byteswritten += MeasurementCodec.RECORD_LENGTH;
+		}
 
-					// update
-					ppreAltiture = preAltitude;
-					preAltitude = currentAltitude;
+		public void end()
+		{
+		}
+	};
 
+	private final WildPointBatch batch;		// Measurements on their way through the wild point detectors.
+	private final long checked;				// IDs that have a detector
 
-					if (currentAltitude != Double.longBitsToDouble(val)) {
-						// replacement occurred, update
-						isAltChanged = true;
-						id = 6;
-						val = Double.doubleToLongBits(currentAltitude); // send updated alt to the output port
-					}
-				}
+	public MiddleFilter()
+	{
+		this(new JumpDetector());
+	}
 
-				if (id == 4) {
-					currentFrame.append(df.format(Double.longBitsToDouble(val)));
-				}
+	public MiddleFilter(WildPointDetector detector)
+	{
+		this(detector, WildPointBatch.DEFAULT_CAPACITY);
+	}
 
+	/****************************************************************************
+	// The measurements are held back in batches of batchSize, so the detector
+	// can check all the altitudes of a batch at once. A batch size of 1 sends
+	// every measurement on as soon as it arrives.
+	*****************************************************************************/
+	public MiddleFilter(WildPointDetector detector, int batchSize)
+	{
+		this(CorrectionRegistry.altitude(detector), batchSize);
+	}
 
-				/* Write current <ID-Value> of current frame byte by byte to the next filter */
-				byte[] idBufferArray = ByteBuffer.allocate(ID_LENGTH).putInt(id).array();
-				byte[] valBufferArray = ByteBuffer.allocate(VAL_LENGTH).putLong(val).array();
+	/****************************************************************************
+	// Every measurement ID in the registry is checked by its own detector, all
+	// in the same pass. A corrected value is sent with the CORRECTED flag in its
+	// ID, right after the original value with the ORIGINAL flag.
+	*****************************************************************************/
+	public MiddleFilter(CorrectionRegistry registry, int batchSize)
+	{
+		this.batch = new WildPointBatch(registry, batchSize, output);
+		this.checked = MeasurementCodec.idSet(registry.ids());
+	}
 
-				for(i = 0; i < ID_LENGTH; ++i) {
-					WriteFilterOutputPort(idBufferArray[i]);
-					byteswritten++;
-				}
-				for(i = 0; i < VAL_LENGTH; ++i) {
-					WriteFilterOutputPort(valBufferArray[i]);
-					byteswritten++;
-				}
+	public void run()
+    {
+		RunFusable();
+	}
 
-			}
-			catch (EndOfStreamException | IOException e)
-			{
-				// flush the last frame if it was changed
-				if (currentFrame.length() > 0 && isAltChanged) {
-					currentFrame.append('\n');
-					try {
-						csvWriter.write(currentFrame.toString());
-						csvWriter.close();
-					} catch (IOException ex) {
-						ex.printStackTrace();
-					} finally {
-						currentFrame.setLength(0);
-					}
-				}
-				ClosePorts();
-				System.out.print( "\n" + this.getName() + "::Middle Exiting; bytes read: " + bytesread + " bytes written: " + byteswritten );
-				break;
-			}
-		}
-		try {
-			assert csvWriter != null;
-			csvWriter.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	/****************************************************************************
+	// The filter passes on what the filters downstream read and reads the time
+	// stamps and the measurements it checks itself, whatever they read.
+	*****************************************************************************/
+	long ConsumedIds(long Downstream)
+	{
+		return Downstream | MeasurementCodec.idSet(0) | checked;
 	}
 
-	/** Convert the value of `incorrect` altitude to be correct, if needed. If the input value itself is
-	 *  defined as correct, the function will simply return its identical value.
-	 *
-	 * @param now:  double-type value of altitude
-	 *
-	 * @return: the original or updated altitude value, if needed
-	 */
-   private double updateAltWhenWildJumps(double now) {
-	   if (preAltitude == Double.MAX_VALUE) {
-			// met first frame, no chance to update, so do nothing here
+	public void begin()
+	{
+		// Next we write a message to the terminal to let the world know we are alive...
+		System.out.print( "\n" + this.getName() + "::Middle Reading ");
+	}
 
-	   } else {
-		   if (ppreAltiture == Double.MAX_VALUE) {
-			   // met second frame
-			   if (Math.abs(now - preAltitude) > 100) {
-				   // simply replace the current with the previous
-				   now = preAltitude;
-			   }
+	/* handle the next <ID-Value> of current frame */
+	public void accept(int id, long val)
+	{
+		bytesread += MeasurementCodec.RECORD_LENGTH;
+		batch.accept(id, val);
+	}
 
-		   } else {
-			   // met third frame or afterwards
-			   if (Math.abs(now - preAltitude) > 100) {
-				   return (preAltitude + ppreAltiture) / 2.0;
-			   }
-		   }
-	   }
+	/****************************************************************************
+	// When the filter runs on its own thread and is about to wait for input, the
+	// measurements of the batch so far are sent on, so the sinks do not wait for
+	// the batch to fill up. Fused, the filter never waits and the batches stay
+	// full.
+	*****************************************************************************/
+	void BeforeWaiting()
+	{
+		batch.flush();
+	}
 
-	   return now;
-   }
+	public void end()
+	{
+		batch.flush();
+		ClosePorts();
+		System.out.print( "\n" + this.getName() + "::Middle Exiting; bytes read: " + bytesread + " bytes written: " + byteswritten );
+	}
 }
\ No newline at end of file
@@ -0,0 +1,320 @@
+/******************************************************************************************************************
+* File:PartitionedPlumber.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Data-parallel SystemB over one flight file.
+*
+* Description:
+* This program produces the same OutputB.csv and WildPoints.csv as Plumber, but it processes one flight file on all
+* cores. The file is cut into parts at frame boundaries (a measurement with ID 0). The parts are processed at the
+* same time on a fork-join pool, each by its own wild point detectors, SinkFilter and WildPointsSinkFilter, into
+* temporary files. These are then joined in order behind the CSV headers.
+*
+* The wild point detectors of a part have to start in the state the detectors of the previous part end in, which
+* is not known until the previous part is done. So every part guesses it: before it starts, its detectors are
+* warmed up on the last few frames before the part (the halo). The altitudes of a flight only change little from
+* frame to frame, so after a couple of frames a warmed up JumpDetector is almost always in the same state as one
+* that has seen the whole flight. When the parts are joined, the state each part started from is compared with the
+* state the previous part really ended in; a part that guessed wrong is processed again from the right state. The
+* output therefore matches Plumber's byte for byte, whatever the data.
+*
+* Usage: java PartitionedPlumber [input file] [parts] [halo frames]
+*	The defaults are ../DataSets/FlightData.dat, four parts per processor and 8 halo frames.
+******************************************************************************************************************/
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+public class PartitionedPlumber
+{
+	private static final String HEADER = "Time,Velocity,Altitude,Pressure,Temperature\n";
+
+	// A part is never larger than this, so it can be mapped into memory in one piece.
+	private static final long MAX_PART_LENGTH = 256L * 1024 * 1024;
+
+	public static void main(String[] argv) throws Exception
+	{
+		String inputFile = argv.length > 0 ? argv[0] : SourceFilter.DEFAULT_FILE_NAME;
+		int parts = argv.length > 1 ? Integer.parseInt(argv[1]) : 4 * Runtime.getRuntime().availableProcessors();
+		int haloFrames = argv.length > 2 ? Integer.parseInt(argv[2]) : 8;
+
+		long started = System.nanoTime();
+		Path workDir = Files.createTempDirectory("partitions");
+		try (FileChannel in = FileChannel.open(Path.of(inputFile), StandardOpenOption.READ))
+		{
+			// A partial measurement at the end of the file is dropped, as it is by the filters.
+			long length = in.size() / MeasurementCodec.RECORD_LENGTH * MeasurementCodec.RECORD_LENGTH;
+			long[] bounds = partBounds(in, length, Math.max(parts, (int) ((length + MAX_PART_LENGTH - 1) / MAX_PART_LENGTH)));
+			int count = bounds.length - 1;
+
+			List<Callable<Part>> tasks = new ArrayList<>();
+			for (int i = 0; i < count; i++)
+			{
+				final int index = i;
+				tasks.add(() -> {
+					CorrectionRegistry seed = CorrectionRegistry.altitude(new JumpDetector());
+					if (index > 0)
+					{
+						warmUp(in, haloStart(in, bounds[index], haloFrames), bounds[index], seed);
+					}
+					Part part = new Part(workDir, index, bounds[index], bounds[index + 1]);
+					part.process(in, seed);
+					return part;
+				});
+			}
+
+			ForkJoinPool pool = ForkJoinPool.commonPool();
+			List<Part> done = new ArrayList<>();
+			for (Future<Part> task : pool.invokeAll(tasks))
+			{
+				done.add(task.get());
+			}
+
+			// Check every guess in order, redoing the parts that started from the wrong state.
+			int redone = 0;
+			for (int i = 1; i < count; i++)
+			{
+				CorrectionRegistry actual = done.get(i - 1).end;
+				if (!done.get(i).start.sameStateAs(actual))
+				{
+					done.get(i).process(in, actual.copy());
+					redone++;
+				}
+			}
+
+			join(done, Path.of("OutputB.csv"), true);
+			join(done, Path.of("WildPoints.csv"), false);
+
+			System.out.printf("%s: %d bytes in %d parts (%d redone) in %.2f s%n", inputFile, length, count, redone,
+					(System.nanoTime() - started) / 1e9);
+		}
+		finally
+		{
+			try (Stream<Path> files = Files.walk(workDir))
+			{
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	/**
+	 * Cut the file into about the given number of parts, each starting with a time stamp (except the first, which
+	 * starts at the beginning of the file).
+	 *
+	 * @return the offsets where the parts start, followed by the length of the file.
+	 */
+	private static long[] partBounds(FileChannel in, long length, int parts) throws IOException
+	{
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(0L);
+		long step = Math.max(MeasurementCodec.RECORD_LENGTH, length / parts / MeasurementCodec.RECORD_LENGTH * MeasurementCodec.RECORD_LENGTH);
+		long previous = 0;
+		for (long target = step; target < length; target += step)
+		{
+			long bound = nextFrame(in, Math.max(target, previous + MeasurementCodec.RECORD_LENGTH), length);
+			if (bound >= length)
+			{
+				break;
+			}
+			if (bound > previous)
+			{
+				bounds.add(bound);
+				previous = bound;
+			}
+		}
+		bounds.add(length);
+
+		long[] result = new long[bounds.size()];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the offset of the first time stamp at or after position, or length if there is none.
+	 */
+	private static long nextFrame(FileChannel in, long position, long length) throws IOException
+	{
+		ByteBuffer block = ByteBuffer.allocate(MeasurementCodec.RECORD_LENGTH * 341);
+		while (position < length)
+		{
+			block.clear();
+			block.limit((int) Math.min(block.capacity(), length - position));
+			readFully(in, block, position);
+			for (int offset = 0; offset < block.limit(); offset += MeasurementCodec.RECORD_LENGTH)
+			{
+				if (MeasurementCodec.decodeId(block.array(), offset) == 0)
+				{
+					return position + offset;
+				}
+			}
+			position += block.limit();
+		}
+		return length;
+	}
+
+	/**
+	 * @return the offset of the frame the given number of frames before the frame at position, or 0.
+	 */
+	private static long haloStart(FileChannel in, long position, int frames) throws IOException
+	{
+		ByteBuffer record = ByteBuffer.allocate(MeasurementCodec.RECORD_LENGTH);
+		int found = 0;
+		while (position > 0 && found < frames)
+		{
+			position -= MeasurementCodec.RECORD_LENGTH;
+			record.clear();
+			readFully(in, record, position);
+			if (MeasurementCodec.decodeId(record.array(), 0) == 0)
+			{
+				found++;
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Show the detectors the values between from and to.
+	 */
+	private static void warmUp(FileChannel in, long from, long to, CorrectionRegistry registry) throws IOException
+	{
+		MappedByteBuffer halo = in.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+		byte[] record = new byte[MeasurementCodec.RECORD_LENGTH];
+		while (halo.remaining() >= MeasurementCodec.RECORD_LENGTH)
+		{
+			halo.get(record);
+			WildPointDetector detector = registry.detector(MeasurementCodec.decodeId(record, 0));
+			if (detector != null)
+			{
+				detector.correct(Double.longBitsToDouble(MeasurementCodec.decodeValue(record, 0)));
+			}
+		}
+	}
+
+	private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			if (in.read(buffer, position + buffer.position()) < 0)
+			{
+				throw new IOException("Unexpected end of file");
+			}
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Write the header and then the rows of every part, in order.
+	 */
+	private static void join(List<Part> parts, Path output, boolean sink) throws IOException
+	{
+		try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			out.write(ByteBuffer.wrap(HEADER.getBytes()));
+			for (Part part : parts)
+			{
+				try (FileChannel rows = FileChannel.open(sink ? part.sinkRows : part.wildPointRows, StandardOpenOption.READ))
+				{
+					long position = 0;
+					long size = rows.size();
+					while (position < size)
+					{
+						position += rows.transferTo(position, size - position, out);
+					}
+				}
+			}
+		}
+	}
+
+	/** One part of the file and what became of it. */
+	private static final class Part
+	{
+		private final long from;
+		private final long to;
+		private final Path sinkRows;
+		private final Path wildPointRows;
+
+		// The detector states the part was processed from, and the states it ended in.
+		CorrectionRegistry start;
+		CorrectionRegistry end;
+
+		Part(Path workDir, int index, long from, long to)
+		{
+			this.from = from;
+			this.to = to;
+			this.sinkRows = workDir.resolve("part" + index + ".csv");
+			this.wildPointRows = workDir.resolve("part" + index + ".wild.csv");
+		}
+
+		/**
+		 * Run the measurements of this part through detectors in the given state and the two sinks, as the
+		 * MiddleFilter and the sinks of a pipeline would.
+		 */
+		void process(FileChannel in, CorrectionRegistry seed) throws IOException
+		{
+			start = seed.copy();
+			CorrectionRegistry detectors = seed;
+			MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+			byte[] block = new byte[MeasurementCodec.RECORD_LENGTH * 341];
+
+			try (OutputStream sinkOut = new BufferedOutputStream(new FileOutputStream(sinkRows.toFile()), 1 << 16);
+				OutputStream wildPointOut = new BufferedOutputStream(new FileOutputStream(wildPointRows.toFile()), 1 << 16))
+			{
+				SinkFilter sink = new SinkFilter(sinkOut);
+				WildPointsSinkFilter wildPoints = new WildPointsSinkFilter(wildPointOut);
+				FusableFilter sinks = new FusableFilter()
+				{
+					public void begin()
+					{
+					}
+
+					public void accept(int id, long value)
+					{
+						sink.accept(id, value);
+						wildPoints.accept(id, value);
+					}
+
+					public void end()
+					{
+					}
+				};
+				WildPointBatch batch = new WildPointBatch(detectors, block.length / MeasurementCodec.RECORD_LENGTH, sinks);
+
+				while (data.hasRemaining())
+				{
+					int length = Math.min(block.length, data.remaining());
+					data.get(block, 0, length);
+					for (int offset = 0; offset < length; offset += MeasurementCodec.RECORD_LENGTH)
+					{
+						batch.accept(MeasurementCodec.decodeId(block, offset), MeasurementCodec.decodeValue(block, offset));
+					}
+				}
+				batch.flush();
+				sink.finishFrame();
+				wildPoints.finishFrame();
+			}
+			end = detectors;
+		}
+	}
+}
@@ -13,31 +13,594 @@
 * instantiates and connects a set of filters. This example consists of three filters: a source, a middle filter
 * that acts as a pass-through filter (it does nothing to the data), and a sink filter which illustrates all kinds
 * of useful things that you can do with the input stream of data.
-* Parameters: None
-* Internal Methods:	None
+*
+* Usage: java Plumber [virtual] [fused] [monitor] [chunked] [columnar] [pipe=<pipe>] [pipe.middle=<pipe>]
+*			[pipe.sinks=<tee>] [sync=none|on_close|every_buffer] [detector=<detector>] [correct=<id>[:<detector>]]
+*			[from=<time>] [to=<time>] [fields=<id>[,<id>...]] [out=<dir>] [input file...]
+*	virtual:	run the filters on virtual threads (Java 21 or later) instead of platform threads.
+*	fused:		call the middle and sink filters on the source filter's thread instead of connecting them by pipes.
+*	monitor:	print how full every pipe is twice a second.
+*	chunked:	read the input files in 1 MB chunks instead of mapping them into memory.
+*	columnar:	write OutputB.col (see ColumnarFile) instead of OutputB.csv.
+*	pipe:		the pipes out of the source filters, <bytes>[:block|spill|drop]: their capacity and what happens
+*				when they are full; a 64 KB ring buffer by default.
+*	pipe.middle:	the pipe into the middle filter, as for "pipe"; the same as "pipe" by default. With one input
+*				file this is the pipe out of its source filter, with several the pipe out of the merge filter.
+*	pipe.sinks:	the tee through which both sinks read the middle filter's output, <bytes>[:block|detach:<ms>]:
+*				its capacity and whether it waits for the slower sink or detaches a sink that holds it back for
+*				that many milliseconds (see TeeConnector); a 64 KB tee that waits by default. The two sinks
+*				share the tee's ring, so they have one option between them.
+*	sync:		when the output files are forced to the disk; none by default.
+*	detector:	the altitude's wild point detector, jump[:threshold] (the default) or
+*				ewma[:window[:sensitivity[:minimum jump]]].
+*	correct:	check another measurement ID as well, with a detector as for "detector"; may be repeated.
+*	from, to:	the time range to read, in milliseconds since the epoch or as a local date and time (see ParseTime).
+*	fields:		the measurement IDs whose columns are written; the time is always written.
+*	out:		the directory the output files are written to; the working directory by default.
+*	Any other argument is an input file, a .dat file or a compressed .gfd file (or any file that exists); several
+*	are merged in time stamp order. The default input is ../DataSets/FlightData.dat. A bad or unknown option (one
+*	with an '=', or a word that is none of the above) prints what is wrong and the usage line.
+* Internal Methods:
+*	static boolean Run(String[] argv)
+*	static boolean IsInputFile(String Arg)
+*	static FilterFramework NewSource(String FileName, SourceFilter.ReadMode Mode, long From, long To, long Ids)
+*	static Supplier<Connector> ParsePipe(String Spec)
+*	static int ParseCapacity(String Text, String Spec)
+*	static Supplier<TeeConnector> ParseTee(String Spec)
+*	static WildPointDetector NewDetector(String Spec)
+*	static long ParseTime(String Text)
+*	static long ParseFields(String Spec)
+*	static boolean AwaitFilters(List<FilterFramework> Filters)
+*	static void MonitorPipes(Map<String, Connector> Pipes, List<FilterFramework> Filters)
 ******************************************************************************************************************/
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
 public class Plumber
 {
+	static final String USAGE = "Usage: java Plumber [virtual] [fused] [monitor] [chunked] [columnar] [pipe=<pipe>]"
+			+ " [pipe.middle=<pipe>] [pipe.sinks=<tee>] [sync=none|on_close|every_buffer] [detector=<detector>]"
+			+ " [correct=<id>[:<detector>]] [from=<time>] [to=<time>] [fields=<id>[,<id>...]] [out=<dir>]"
+			+ " [input file...]";
+
    public static void main(String[] argv)
    {
-		// Here we instantiate three filters.
-		SourceFilter Filter1 = new SourceFilter();
-		MiddleFilter Filter2 = new MiddleFilter();
-		SinkFilter Filter3 = new SinkFilter();
+		if (!Run(argv))
+		{
+			System.exit(1);
+		}
+   }
+
+	/**
+	 * Build the pipeline the arguments describe, run it and wait for it to finish. This is what main does, less
+	 * the exit status, so the pipeline can also be run (by a benchmark, say) without leaving the JVM.
+	 *
+	 * @return false if an argument was bad (the usage line has been printed) or a filter failed.
+	 */
+	static boolean Run(String[] argv)
+	{
+		/****************************************************************************
+		* The command line may ask for "virtual" threads and for "fused" filters,
+		* may set the capacity and policy of the pipes out of the source filters
+		* with "pipe=<bytes>[:block|spill|drop]", of the pipe into the middle
+		* filter with "pipe.middle=" and of the tee into the sinks with
+		* "pipe.sinks=<bytes>[:block|detach:<ms>]", may ask to "monitor" how full the
+		* pipes are, may ask for the input files to be read in "chunked" mode
+		* instead of being mapped into memory, may choose when the CSV files are
+		* forced to the disk with "sync=none|on_close|every_buffer", may choose the
+		* altitude's wild point detector with "detector=jump[:threshold]" (the
+		* default) or "detector=ewma[:window[:sensitivity[:minimum jump]]]", may
+		* check other measurement IDs as well with "correct=<id>:<detector>", may
+		* read only the frames of a time range with "from=<time>" and "to=<time>"
+		* (see ParseTime), may write only some columns with "fields=<id>,<id>...",
+		* may ask for the output to be written as a "columnar" file instead of CSV,
+		* may choose the directory it is written to with "out=<dir>", and may
+		* name the input files, .dat files or compressed .gfd files. The
+		* default input is FlightData.dat.
+		****************************************************************************/
+
+		boolean Virtual = false;
+		boolean Fused = false;
+		boolean Monitor = false;
+		boolean Columnar = false;
+		SourceFilter.ReadMode Mode = SourceFilter.ReadMode.MAPPED;
+		Supplier<Connector> SourcePipes = ParsePipe(null);
+		Supplier<Connector> MiddlePipes = null;	// the same as the pipes out of the sources unless given
+		Supplier<TeeConnector> SinkTees = ParseTee(null);
+		AsyncFileWriter.Sync Sync = AsyncFileWriter.Sync.NONE;
+		long From = Long.MIN_VALUE;
+		long To = Long.MAX_VALUE;
+		long Fields = SinkFilter.ALL_COLUMNS;
+		CorrectionRegistry Corrections = new CorrectionRegistry().register(2, NewDetector(null));
+		List<String> InputFiles = new ArrayList<>();
+		Path OutputDir = Path.of("");
+		try
+		{
+			for (String Arg : argv)
+			{
+				if (Arg.equals("virtual"))
+				{
+					Virtual = true;
+				}
+				else if (Arg.equals("fused"))
+				{
+					Fused = true;
+				}
+				else if (Arg.equals("monitor"))
+				{
+					Monitor = true;
+				}
+				else if (Arg.equals("columnar"))
+				{
+					Columnar = true;
+				}
+				else if (Arg.equals("chunked"))
+				{
+					Mode = SourceFilter.ReadMode.CHUNKED;
+				}
+				else if (Arg.startsWith("pipe="))
+				{
+					SourcePipes = ParsePipe(Arg.substring("pipe=".length()));
+				}
+				else if (Arg.startsWith("pipe.middle="))
+				{
+					MiddlePipes = ParsePipe(Arg.substring("pipe.middle=".length()));
+				}
+				else if (Arg.startsWith("pipe.sinks="))
+				{
+					SinkTees = ParseTee(Arg.substring("pipe.sinks=".length()));
+				}
+				else if (Arg.startsWith("detector="))
+				{
+					Corrections.register(2, NewDetector(Arg.substring("detector=".length())));
+				}
+				else if (Arg.startsWith("correct="))
+				{
+					String[] Parts = Arg.substring("correct=".length()).split(":", 2);
+					Corrections.register(Integer.parseInt(Parts[0]), NewDetector(Parts.length > 1 ? Parts[1] : null));
+				}
+				else if (Arg.startsWith("sync="))
+				{
+					Sync = AsyncFileWriter.Sync.valueOf(Arg.substring("sync=".length()).toUpperCase());
+				}
+				else if (Arg.startsWith("from="))
+				{
+					From = ParseTime(Arg.substring("from=".length()));
+				}
+				else if (Arg.startsWith("to="))
+				{
+					To = ParseTime(Arg.substring("to=".length()));
+				}
+				else if (Arg.startsWith("fields="))
+				{
+					Fields = ParseFields(Arg.substring("fields=".length()));
+				}
+				else if (Arg.startsWith("out="))
+				{
+					OutputDir = Path.of(Arg.substring("out=".length()));
+				}
+				else if (IsInputFile(Arg))
+				{
+					InputFiles.add(Arg);
+				}
+				else
+				{
+					throw new IllegalArgumentException("Unknown option: " + Arg);
+				}
+			}
+		}
+		catch (IllegalArgumentException | DateTimeException Error)
+		{
+			System.out.println(Error.getMessage());
+			System.out.println(USAGE);
+			return false;
+		}
+		if (MiddlePipes == null)
+		{
+			MiddlePipes = SourcePipes;
+		}
+
+		/****************************************************************************
+		* Here we instantiate the filters, the middle filter and the sinks first.
+		* There is a source filter per input file; when there are several, they are
+		* merged by a MergeFilter in time stamp order and the merge filter becomes
+		* Filter1, the start of the pipeline.
+		****************************************************************************/
+
+		MiddleFilter Filter2 = new MiddleFilter(Corrections, WildPointBatch.DEFAULT_CAPACITY);
+		FilterFramework Filter3 = Columnar
+				? new ColumnarSinkFilter(OutputDir.resolve("OutputB" + ColumnarFile.SUFFIX).toString(), Sync, Fields)
+				: new SinkFilter(OutputDir.resolve("OutputB.csv").toString(), Sync, Fields);
+		WildPointsSinkFilter Filter4 = new WildPointsSinkFilter(OutputDir.resolve("WildPoints.csv").toString(), Sync,
+				Fields, MeasurementCodec.idSet(Corrections.ids()));
+
+		/****************************************************************************
+		* The measurements the filters read are pushed upstream, from the sinks to
+		* the sources, which leave every other measurement out of the stream. The
+		* middle filter passes on what the sinks read and adds the time stamps and
+		* the measurements it checks.
+		****************************************************************************/
+
+		long Consumed = Filter2.ConsumedIds(Filter3.ConsumedIds(MeasurementCodec.ALL_IDS)
+				| Filter4.ConsumedIds(MeasurementCodec.ALL_IDS));
+
+		List<FilterFramework> Filters = new ArrayList<>();
+		Map<String, Connector> Pipes = new LinkedHashMap<>();
+		FilterFramework Filter1;
+		if (InputFiles.size() > 1)
+		{
+			MergeFilter Merge = new MergeFilter();
+			long MergeConsumed = Merge.ConsumedIds(Consumed);
+			for (String InputFile : InputFiles)
+			{
+				FilterFramework Source = NewSource(InputFile, Mode, From, To, MergeConsumed);
+				Connector Pipe = SourcePipes.get();
+				Merge.ConnectInput(Source, Pipe);
+				Pipes.put(InputFile + " -> merge", Pipe);
+				Filters.add(Source);
+			}
+			Filter1 = Merge;
+		}
+		else
+		{
+			Filter1 = NewSource(InputFiles.isEmpty() ? SourceFilter.DEFAULT_FILE_NAME : InputFiles.get(0),
+					Mode, From, To, Consumed);
+		}
+		Filters.addAll(List.of(Filter1, Filter2, Filter3, Filter4));
 
 		/****************************************************************************
 		* Here we connect the filters starting with the sink filter (Filter 3) which
 		* we connect to Filter2 the middle filter. Then we connect Filter2 to the
-		* source filter (Filter1).
+		* source filter (Filter1). The wild points sink (Filter4) is connected to
+		* Filter2 as well: both sinks read Filter2's output through the branches of
+		* one TeeConnector. Every connection is given its own connector, so the kind
+		* of pipe can be chosen per edge: RingBufferConnector is a lock-free ring
+		* buffer, BufferedConnector can spill to disk or drop frames when it is
+		* full, and Connect(Filter) without a connector uses a java pipe.
+		* With "fused", ConnectFused is used instead: the middle and sink filters are
+		* then called directly by the source filter's thread for every measurement,
+		* with no pipe and no thread of their own.
 		****************************************************************************/
 
-		Filter3.Connect(Filter2); // This esstially says, "connect Filter3 input port to Filter2 output port
-		Filter2.Connect(Filter1); // This esstially says, "connect Filter2 input port to Filter1 output port
+		TeeConnector Tee = SinkTees.get();
+		Connector SinkPipe = Tee.branch();
+		Connector WildPointsPipe = Tee.branch();
+		Connector MiddlePipe = MiddlePipes.get();
+		if (Fused)
+		{
+			Filter3.ConnectFused(Filter2, SinkPipe);
+			Filter4.ConnectFused(Filter2, WildPointsPipe);
+			Filter2.ConnectFused(Filter1, MiddlePipe);
+		}
+		else
+		{
+			Filter3.Connect(Filter2, SinkPipe); // This esstially says, "connect Filter3 input port to Filter2 output port
+			Filter4.Connect(Filter2, WildPointsPipe); // Filter4 reads the same output of Filter2
+			Filter2.Connect(Filter1, MiddlePipe); // This esstially says, "connect Filter2 input port to Filter1 output port
+			Pipes.put(InputFiles.size() > 1 ? "merge -> middle" : "source -> middle", MiddlePipe);
+			Pipes.put("middle -> sink", SinkPipe);
+			Pipes.put("middle -> wild points", WildPointsPipe);
+		}
 
-		// Here we start the filters up.
-		Filter1.start();
-		Filter2.start();
-		Filter3.start();
-   }
+		/****************************************************************************
+		* Here we start the filters up. Each filter runs on its own thread, unless
+		* "virtual" is given on the command line, in which case the filters run on
+		* virtual threads (Java 21 or later). Fused filters are not started; they
+		* run inside the filter upstream of them.
+		****************************************************************************/
+
+		ExecutorService Runner = null;
+		if (Virtual)
+		{
+			Runner = FilterFramework.VirtualThreadExecutor();
+			if (Runner == null)
+			{
+				System.out.println("\nVirtual threads need Java 21 or later, using platform threads.");
+			}
+		}
+
+		for (FilterFramework Filter : Filters)
+		{
+			if (Filter.IsFused())
+			{
+				continue;
+			}
+
+			if (Runner == null)
+			{
+				Filter.start();
+			}
+			else
+			{
+				Filter.Start(Runner);
+			}
+		}
+
+		if (Runner != null)
+		{
+			Runner.shutdown();	// the filters keep running, no new tasks are accepted
+		}
+
+		if (Monitor)
+		{
+			MonitorPipes(Pipes, Filters);
+		}
+
+		/****************************************************************************
+		* Here we wait for the filters to finish. A filter that could not read or
+		* write its file has reported it already; the exit status tells the caller.
+		****************************************************************************/
+
+		return AwaitFilters(Filters);
+	}
+
+	/**
+	 * Tell an input file from a misspelt option: an option has an '=' or is one of the words above, an input file
+	 * is a .dat or .gfd file or a file that exists.
+	 */
+	static boolean IsInputFile(String Arg)
+	{
+		if (Arg.contains("="))
+		{
+			return false;
+		}
+		return Arg.endsWith(".dat") || Arg.endsWith(GorillaCodec.SUFFIX) || Files.isRegularFile(Path.of(Arg));
+	}
+
+	/**
+	 * Make the source filter of an input file, which writes the frames of the time range and the measurements in
+	 * the given set of IDs: a CompressedSourceFilter for a compressed (.gfd) file and a SourceFilter otherwise.
+	 */
+	static FilterFramework NewSource(String FileName, SourceFilter.ReadMode Mode, long From, long To, long Ids)
+	{
+		if (FileName.endsWith(GorillaCodec.SUFFIX))
+		{
+			CompressedSourceFilter Source = new CompressedSourceFilter(FileName, From, To);
+			Source.Project(Ids);
+			return Source;
+		}
+		SourceFilter Source = new SourceFilter(FileName, Mode, From, To);
+		Source.Project(Ids);
+		return Source;
+	}
+
+	/**
+	 * Parse a "pipe=" option, <bytes>[:block|spill|drop], into a maker of the connectors it describes: a new
+	 * BufferedConnector of that capacity and policy for every edge the option is used for. Without the option
+	 * (null), the edges get the usual 64 KB ring buffer.
+	 *
+	 * @throws IllegalArgumentException if the option does not describe a pipe.
+	 */
+	static Supplier<Connector> ParsePipe(String Spec)
+	{
+		if (Spec == null)
+		{
+			return () -> new RingBufferConnector(64 * 1024);
+		}
+
+		String[] Parts = Spec.split(":", -1);
+		int Capacity = ParseCapacity(Parts[0], Spec);
+		BufferedConnector.Policy Policy;
+		switch (Parts.length > 1 ? Parts[1] : "block")
+		{
+			case "block":
+				Policy = BufferedConnector.Policy.BLOCK;
+				break;
+			case "spill":
+				Policy = BufferedConnector.Policy.SPILL;
+				break;
+			case "drop":
+				Policy = BufferedConnector.Policy.DROP_OLDEST;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown pipe policy: " + Spec);
+		}
+		if (Parts.length > 2)
+		{
+			throw new IllegalArgumentException("Bad pipe: " + Spec);
+		}
+		return () -> new BufferedConnector(Capacity, Policy);
+	}
+
+	/**
+	 * Parse the capacity of a pipe in bytes: from the length of one measurement to 1 GB.
+	 */
+	static int ParseCapacity(String Text, String Spec)
+	{
+		int Capacity;
+		try
+		{
+			Capacity = Integer.parseInt(Text);
+		}
+		catch (NumberFormatException Error)
+		{
+			throw new IllegalArgumentException("Bad pipe capacity in bytes: " + Spec);
+		}
+		if (Capacity < MeasurementCodec.RECORD_LENGTH || Capacity > (1 << 30))
+		{
+			throw new IllegalArgumentException("Pipe capacity out of range: " + Spec);
+		}
+		return Capacity;
+	}
+
+	/**
+	 * Parse a "pipe.sinks=" option, <bytes>[:block|detach[:<patience ms>]], into a maker of the TeeConnector that
+	 * the middle filter writes to both sinks through, or of the usual 64 KB tee that blocks if there is no option.
+	 *
+	 * @throws IllegalArgumentException if the option does not describe a tee.
+	 */
+	static Supplier<TeeConnector> ParseTee(String Spec)
+	{
+		if (Spec == null)
+		{
+			return () -> new TeeConnector(64 * 1024, TeeConnector.Policy.BLOCK, 0);
+		}
+
+		String[] Parts = Spec.split(":", -1);
+		int Capacity = ParseCapacity(Parts[0], Spec);
+		TeeConnector.Policy Policy;
+		long Patience = 0;
+		switch (Parts.length > 1 ? Parts[1] : "block")
+		{
+			case "block":
+				Policy = TeeConnector.Policy.BLOCK;
+				if (Parts.length > 2)
+				{
+					throw new IllegalArgumentException("Bad pipe: " + Spec);
+				}
+				break;
+			case "detach":
+				Policy = TeeConnector.Policy.DETACH;
+				if (Parts.length != 3 || !Parts[2].matches("[0-9]{1,9}"))
+				{
+					throw new IllegalArgumentException("A detaching tee needs its patience in milliseconds: " + Spec);
+				}
+				Patience = Long.parseLong(Parts[2]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown tee policy: " + Spec);
+		}
+		long Patient = Patience;
+		return () -> new TeeConnector(Capacity, Policy, Patient);
+	}
+
+	/**
+	 * Make the wild point detector described by a "detector=" option, or the lab's JumpDetector if there is no
+	 * option. Parameters that are left out take their defaults.
+	 */
+	static WildPointDetector NewDetector(String Spec)
+	{
+		if (Spec == null)
+		{
+			return new JumpDetector();
+		}
+
+		String[] Parts = Spec.split(":");
+		switch (Parts[0])
+		{
+			case "jump":
+				return new JumpDetector(Parts.length > 1 ? Double.parseDouble(Parts[1]) : JumpDetector.DEFAULT_THRESHOLD);
+			case "ewma":
+				return new EwmaDetector(
+						Parts.length > 1 ? Integer.parseInt(Parts[1]) : EwmaDetector.DEFAULT_WINDOW,
+						Parts.length > 2 ? Double.parseDouble(Parts[2]) : EwmaDetector.DEFAULT_SENSITIVITY,
+						Parts.length > 3 ? Double.parseDouble(Parts[3]) : EwmaDetector.DEFAULT_MINIMUM_JUMP);
+			default:
+				throw new IllegalArgumentException("Unknown detector: " + Parts[0]);
+		}
+	}
+
+	/**
+	 * Parse the time of a "from=" or "to=" option: milliseconds since the epoch, or a local date and time such as
+	 * 2020-01-10T11:19:25 (or 2020-01-10T11:19:25.798) in the default time zone.
+	 */
+	static long ParseTime(String Text)
+	{
+		if (Text.chars().allMatch(Character::isDigit))
+		{
+			return Long.parseLong(Text);
+		}
+		return LocalDateTime.parse(Text).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	/**
+	 * Parse the IDs of a "fields=" option, such as 2 or 1,2,4, into the set of columns to write. The time is always
+	 * written.
+	 */
+	static long ParseFields(String Spec)
+	{
+		long Fields = MeasurementCodec.idSet(0);
+		for (String Id : Spec.split(","))
+		{
+			int Field = Integer.parseInt(Id.trim());
+			if (Field < 1 || Field >= SinkFilter.COLUMNS.length)
+			{
+				throw new IllegalArgumentException("No column for measurement ID " + Field);
+			}
+			Fields |= MeasurementCodec.idSet(Field);
+		}
+		return Fields;
+	}
+
+	/**
+	 * Wait until the filters have finished.
+	 *
+	 * @return false if one of them failed (see FilterFramework.Fail) or the wait was interrupted.
+	 */
+	static boolean AwaitFilters(List<FilterFramework> Filters)
+	{
+		try
+		{
+			for (FilterFramework Filter : Filters)
+			{
+				Filter.AwaitCompletion();
+			}
+		}
+		catch (InterruptedException Error)
+		{
+			return false;
+		}
+
+		boolean Succeeded = true;
+		for (FilterFramework Filter : Filters)
+		{
+			Succeeded &= Filter.Failure() == null;
+		}
+		return Succeeded;
+	}
+
+	/**
+	 * Print how full each pipe is twice a second until the filters have finished, then the most each pipe held
+	 * and what it spilled or dropped.
+	 */
+	static void MonitorPipes(Map<String, Connector> Pipes, List<FilterFramework> Filters)
+	{
+		boolean Running = true;
+		while (Running)
+		{
+			try
+			{
+				Thread.sleep(500);
+			}
+			catch (InterruptedException Error)
+			{
+				return;
+			}
+
+			Running = false;
+			for (FilterFramework Filter : Filters)
+			{
+				Running |= Filter.IsRunning();
+			}
+
+			StringBuilder Line = new StringBuilder("\nPipes:");
+			for (Map.Entry<String, Connector> Pipe : Pipes.entrySet())
+			{
+				Line.append("  ").append(Pipe.getKey()).append(' ').append(Pipe.getValue().occupancy())
+					.append('/').append(Pipe.getValue().capacity());
+			}
+			System.out.print(Line);
+		}
+
+		for (Map.Entry<String, Connector> Pipe : Pipes.entrySet())
+		{
+			if (Pipe.getValue() instanceof BufferedConnector)
+			{
+				BufferedConnector Buffered = (BufferedConnector) Pipe.getValue();
+				System.out.print("\n" + Pipe.getKey() + ": held at most " + Buffered.highWater() + " bytes, spilled "
+						+ Buffered.spilledBytes() + " bytes, dropped " + Buffered.droppedFrames() + " frames");
+			}
+		}
+		System.out.println();
+	}
 }
\ No newline at end of file
@@ -15,173 +15,226 @@
 *	2) It parses the input steam for measurments and "decommutates" measurements, storing the bits in a long word.
 * This filter illustrates how to convert the byte stream data from the upstream filterinto useable data found in
 * the stream: namely time (long type) and measurements (double type).
-* Parameters: None
-* Internal Methods: None
+*
+* The filter can write some of the columns only; it then reads only the measurements of those columns (see
+* ConsumedIds), and the Plumber has the source filter leave the others out of the stream.
+* Parameters:
+* fields:	The set of IDs whose columns are written (see MeasurementCodec.idSet), all of them by default. The time
+*			is always written.
+* Internal Methods:
+*	static String header(long fields)
 ******************************************************************************************************************/
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.math.RoundingMode;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.List;
 
-public class SinkFilter extends FilterFramework
+public class SinkFilter extends FilterFramework implements FusableFilter
 {
+	// The columns of the CSV file, by measurement ID.
+	static final String[] COLUMNS = {"Time", "Velocity", "Altitude", "Pressure", "Temperature"};
+	static final long ALL_COLUMNS = MeasurementCodec.idSet(0, 1, 2, 3, 4);
+
+	private final String outputPath;	// Output CSV file.
+	private final AsyncFileWriter.Sync sync;	// When the CSV file is forced to the disk.
+	private final long fields;			// IDs whose columns are written
+	private final int lastField;		// the ID of the last column, which no comma follows
+
+	/************************************************************************************
+	*	currentFrame holds the row of the current frame. It formats the time stamps
+	*	as "yyyy MM dd::hh:mm:ss:SSS" and the values as "0.00000" (truncated) without
+	*	allocating anything per measurement.
+	*************************************************************************************/
+	private final CsvFormatter currentFrame = new CsvFormatter(true);
+
+	private long bytesread = 0;				// This is the number of bytes read from the stream
+	private OutputStream csvOutput = null;
+
+	public SinkFilter()
+	{
+		this("OutputB.csv");
+	}
+
+	public SinkFilter(String outputPath)
+	{
+		this(outputPath, AsyncFileWriter.Sync.NONE);
+	}
+
+	/****************************************************************************
+	// The CSV file is written by an AsyncFileWriter, so this filter's thread
+	// never waits on the disk; sync is its policy for forcing the file to disk.
+	*****************************************************************************/
+	public SinkFilter(String outputPath, AsyncFileWriter.Sync sync)
+	{
+		this(outputPath, sync, ALL_COLUMNS);
+	}
+
+	public SinkFilter(String outputPath, AsyncFileWriter.Sync sync, long fields)
+	{
+		this.outputPath = outputPath;
+		this.sync = sync;
+		this.fields = (fields & ALL_COLUMNS) | MeasurementCodec.idSet(0);
+		this.lastField = 63 - Long.numberOfLeadingZeros(this.fields);
+	}
+
+	/****************************************************************************
+	// This sink writes its rows, without the header, to the given stream. It is
+	// not run as a filter: PartitionedPlumber calls accept() for the measurements
+	// of one part of the file and finishFrame() at the end of the part.
+	*****************************************************************************/
+	SinkFilter(OutputStream csvOutput)
+	{
+		this.outputPath = null;
+		this.sync = AsyncFileWriter.Sync.NONE;
+		this.fields = ALL_COLUMNS;
+		this.lastField = 4;
+		this.csvOutput = csvOutput;
+	}
+
+	/****************************************************************************
+	// The header line of a CSV file with the given columns.
+	*****************************************************************************/
+	static String header(long fields)
+	{
+		StringBuilder header = new StringBuilder();
+		for (int id = 0; id < COLUMNS.length; id++)
+		{
+			if (MeasurementCodec.contains(fields, id))
+			{
+				header.append(header.length() > 0 ? "," : "").append(COLUMNS[id]);
+			}
+		}
+		return header.append('\n').toString();
+	}
+
+	/****************************************************************************
+	// A sink reads the measurements of the columns it writes.
+	*****************************************************************************/
+	long ConsumedIds(long downstream)
+	{
+		return fields;
+	}
+
 	public void run()
     {
-		/************************************************************************************
-		*	TimeStamp is used to compute time using java.util's Calendar class.
-		* 	TimeStampFormat is used to format the time value so that it can be easily printed
-		*	to the terminal.
-		*************************************************************************************/
-		Calendar TimeStamp = Calendar.getInstance();
-		SimpleDateFormat TimeStampFormat = new SimpleDateFormat("yyyy MM dd::hh:mm:ss:SSS");
-
-		int MeasurementLength = 8;		// This is the length of all measurements (including time) in bytes
-		int IdLength = 4;				// This is the length of IDs in the byte stream
-		byte databyte = 0;				// This is the data byte read from the stream
-		int bytesread = 0;				// This is the number of bytes read from the stream
-		long measurement;				// This is the word used to store all measurements - conversions are illustrated.
-		int id;							// This is the measurement id
-		int i;							// This is a loop counter
-		String outputPath = "OutputB.csv";
-		StringBuilder currentFrame = new StringBuilder();
-		DecimalFormat df = new DecimalFormat("0.00000");
-		df.setRoundingMode(RoundingMode.DOWN);
-
-		FileWriter csvWriter = null;
+		RunFusable();
+	} // run
+
+	public void begin()
+	{
 		try {
 			if (Files.exists(Path.of(outputPath))) {
 				Files.delete(Path.of(outputPath));
 			}
-			csvWriter = new FileWriter(outputPath, true);  // set as append mod
-			String header = "Time,Velocity,Altitude,Pressure,Temperature\n";
-			csvWriter.append(header);
+			csvOutput = new AsyncFileWriter(Path.of(outputPath), sync);
+			csvOutput.write(header(fields).getBytes());
 		} catch (IOException e) {
-			e.printStackTrace();
-			System.exit(1);
+			Fail("Problem opening " + outputPath, e);
+			csvOutput = OutputStream.nullOutputStream();	// the rest of the stream is read and dropped
 		}
 
 		// First we announce to the world that we are alive...
 		System.out.print( "\n" + this.getName() + "::Sink Reading ");
+	}
 
-		while (true)
-		{
-			try
-			{
-				/***************************************************************************
-				// We know that the first data coming to this filter is going to be an ID and
-				// that it is IdLength long. So we first get the ID bytes.
-				****************************************************************************/
-				id = 0;
-				for (i=0; i<IdLength; i++ )
-				{
-					databyte = ReadFilterInputPort();	// This is where we read the byte from the stream...
-					id = id | (databyte & 0xFF);		// We append the byte on to ID...
-					if (i != IdLength-1)				// If this is not the last byte, then slide the
-					{									// previously appended byte to the left by one byte
-						id = id << 8;					// to make room for the next byte we append to the ID
-					}
-					bytesread++;						// Increment the byte count
-				}
+	/****************************************************************************
+	// Here we get a whole measurement: its ID and its value. The value is stored
+	// as a long. If the id = 0 then this is a time value and is therefore a long
+	// value - no problem. However, if the id is something other than 0, then the
+	// bits in the long value are really of type double and we need to convert the
+	// value using Double.longBitsToDouble(long val) as illustrated below.
+	*****************************************************************************/
+	public void accept(int id, long measurement)
+	{
+		bytesread += MeasurementCodec.RECORD_LENGTH;
 
-				/****************************************************************************
-				// Here we read measurements. All measurement data is read as a stream of bytes
-				// and stored as a long value. This permits us to do bitwise manipulation that
-				// is neccesary to convert the byte stream into data words. Note that bitwise
-				// manipulation is not permitted on any kind of floating point types in Java.
-				// If the id = 0 then this is a time value and is therefore a long value - no
-				// problem. However, if the id is something other than 0, then the bits in the
-				// long value is really of type double and we need to convert the value using
-				// Double.longBitsToDouble(long val) to do the conversion which is illustrated below.
-				*****************************************************************************/
-				measurement = 0;
-				for (i=0; i<MeasurementLength; i++ )
-				{
-					databyte = ReadFilterInputPort();
-					measurement = measurement | (databyte & 0xFF);	// We append the byte on to measurement...
-					if (i != MeasurementLength-1)					// If this is not the last byte, then slide the
-					{												// previously appended byte to the left by one byte
-						measurement = measurement << 8;				// to make room for the next byte we append to the
-																	// measurement
-					}
-					bytesread++;									// Increment the byte count
-				}
+		/****************************************************************************
+		// A value MiddleFilter replaced has the CORRECTED flag in its ID and is
+		// marked with a '*'. The original value sent before it is not written here.
+		****************************************************************************/
+		if ((id & MeasurementCodec.ORIGINAL) != 0)
+		{
+			return;
+		}
+		boolean corrected = (id & MeasurementCodec.CORRECTED) != 0;
+		id = MeasurementCodec.field(id);
 
-				/****************************************************************************
-				// Here we look for an ID of 0 which indicates this is a time measurement.
-				// Every frame begins with an ID of 0, followed by a time stamp which correlates
-				// to the time that each proceeding measurement was recorded. Time is stored
-				// in milliseconds since Epoch. This allows us to use Java's calendar class to
-				// retrieve time and also use text format classes to format the output into
-				// a form humans can read. So this provides great flexibility in terms of
-				// dealing with time arithmetically or for string display purposes. This is
-				// illustrated below.
-				****************************************************************************/
-				if ( id == 0 )
-				{
-					// flush if the current buffer is not empty
-					if (currentFrame.length() > 0) {
-						currentFrame.append('\n');
-						csvWriter.write(currentFrame.toString()); // write to local disk
-						currentFrame.setLength(0); // reset
-					}
-
-					// current measurement is Time.
-					TimeStamp.setTimeInMillis(measurement);
-					currentFrame.append(TimeStampFormat.format(TimeStamp.getTime()));
-					currentFrame.append(',');
-				}
-				if (id == 1 || id == 2 || id == 3)
-				{
-					// current measurement is Velocity, Altitude (No Wild Jumps)
-					currentFrame.append(df.format(Double.longBitsToDouble(measurement)));
-					currentFrame.append(',');
-				}
-				if (id == 6) {
-					// current measurement is updated Altitude (Wild Jumps)
-					currentFrame.append(df.format(Double.longBitsToDouble(measurement)));
-					currentFrame.append("*,");
-				}
-				if ( id == 4 )
-				{
-					// current measurement is temperature
-					currentFrame.append(df.format(Double.longBitsToDouble(measurement)));
+		/****************************************************************************
+		// Here we look for an ID of 0 which indicates this is a time measurement.
+		// Every frame begins with an ID of 0, followed by a time stamp which correlates
+		// to the time that each proceeding measurement was recorded. Time is stored
+		// in milliseconds since Epoch. This allows us to use Java's calendar class to
+		// retrieve time and also use text format classes to format the output into
+		// a form humans can read. So this provides great flexibility in terms of
+		// dealing with time arithmetically or for string display purposes. This is
+		// illustrated below.
+		****************************************************************************/
+		if ( id == 0 )
+		{
+			// flush if the current buffer is not empty
+			if (currentFrame.length() > 0) {
+				currentFrame.append('\n');
+				try {
+					currentFrame.writeTo(csvOutput); // write to local disk
+				} catch (IOException e) {
+					Fail("Problem writing " + outputPath, e);
 				}
+				currentFrame.reset();
 			}
-			/*******************************************************************************
-			*	The EndOfStreamExeception below is thrown when you reach end of the input
-			*	stream. At this point, the filter ports are closed and a message is
-			*	written letting the user know what is going on.
-			********************************************************************************/
-			catch (EndOfStreamException | IOException e)
-			{
-				// flush the last frame
-				if (currentFrame.length() > 0) {
-					currentFrame.append('\n');
-					try {
-						csvWriter.write(currentFrame.toString());
-					} catch (IOException ex) {
-						ex.printStackTrace();
-					}
-					currentFrame.setLength(0);
-				}
 
-				ClosePorts();
-				System.out.print( "\n" + this.getName() + "::Sink Exiting; bytes read: " + bytesread );
-				break;
+			// current measurement is Time.
+			currentFrame.appendTime(measurement);
+			if (lastField != 0) {
+				currentFrame.append(',');
+			}
+		}
+		if (id >= 1 && id <= 4 && MeasurementCodec.contains(fields, id))
+		{
+			// current measurement is Velocity, Altitude, Pressure or Temperature; the last column has no comma
+			currentFrame.appendValue(Double.longBitsToDouble(measurement));
+			if (corrected) {
+				currentFrame.append('*');
+			}
+			if (id != lastField) {
+				currentFrame.append(',');
 			}
-		} // while
+		}
+	}
+
+	/*******************************************************************************
+	*	This is called when you reach end of the input stream. At this point, the
+	*	filter ports are closed and a message is written letting the user know what
+	*	is going on.
+	********************************************************************************/
+	public void end()
+	{
+		finishFrame();
+
+		ClosePorts();
+		System.out.print( "\n" + this.getName() + "::Sink Exiting; bytes read: " + bytesread );
 
 		try {
-			csvWriter.close();
+			csvOutput.close();
 		} catch (IOException e) {
-			e.printStackTrace();
+			Fail("Problem writing " + outputPath, e);
 		}
-	} // run
+	}
+
+	/*******************************************************************************
+	*	This writes the last frame, which no time stamp follows.
+	********************************************************************************/
+	void finishFrame()
+	{
+		// flush the last frame
+		if (currentFrame.length() > 0) {
+			currentFrame.append('\n');
+			try {
+				currentFrame.writeTo(csvOutput);
+			} catch (IOException ex) {
+				Fail("Problem writing " + outputPath, ex);
+			}
+			currentFrame.reset();
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,480 @@
+/******************************************************************************************************************
+* File:TeeConnector.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - Broadcast connector joining one upstream filter to several downstream filters.
+*
+* Description:
+* This connector lets one filter feed any number of downstream filters. It is a ring buffer like
+* RingBufferConnector with one writer, but with one read position (a branch) per downstream filter. The upstream
+* filter writes every byte into the ring once and every branch reads it from there, so the stream is broadcast
+* without copying it per consumer. Space in the ring is only reused after every branch has read it, which means the
+* slowest branch holds the writer back. What happens then is chosen by the policy:
+*	BLOCK:	the writer waits for the slowest branch, however long it takes. No branch ever loses data.
+*	DETACH:	the writer waits for the slowest branch at most the given patience. After that the branches that are
+*			holding it back are detached: they are dropped from the tee and their reader gets a read error, which the
+*			framework treats as the end of its stream. The other branches carry on at full speed. This suits
+*			optional consumers such as statistics, which must not slow down the main pipeline.
+* A branch whose filter closes its input port stops holding the writer back. Writing fails only when every branch
+* has been closed or detached.
+*
+* Usage: every downstream filter is connected with its own branch, and all branches must be created before the
+* upstream filter starts writing:
+*	TeeConnector Tee = new TeeConnector(64 * 1024, TeeConnector.Policy.BLOCK, 0);
+*	Filter3.Connect(Filter2, Tee.branch());
+*	Filter4.Connect(Filter2, Tee.branch());
+*
+* Parameters:
+* capacity:	The size of the ring in bytes. It is rounded up to a power of two.
+* policy:	What the writer does when the slowest branch is a full ring behind.
+* patienceMillis:	How long the DETACH policy waits for a slow branch before detaching it.
+******************************************************************************************************************/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+class TeeConnector
+{
+	enum Policy { BLOCK, DETACH }
+
+	private static final int SPIN_TRIES = Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+	private static final int YIELD_TRIES = 10;
+	private static final long PARK_NANOS = 10_000_000L;
+
+	private final byte[] buffer;
+	private final int mask;
+	private final Policy policy;
+	private final long patienceNanos;
+
+	// Sequence one past the last byte the writer has published. Only the writer writes it.
+	private volatile long tail = 0;
+	private volatile boolean writerClosed = false;
+	private volatile Thread writerThread;
+	private volatile Thread waitingWriter;
+
+	// Branches still attached to the tee. The array is replaced, never changed, so readers of it need no lock.
+	private volatile Branch[] branches = new Branch[0];
+
+	private final TeeOutput output = new TeeOutput();
+
+	TeeConnector(int capacity, Policy policy, long patienceMillis)
+	{
+		if (capacity <= 0 || capacity > (1 << 30))
+		{
+			throw new IllegalArgumentException("Tee capacity out of range: " + capacity);
+		}
+		if (policy == Policy.DETACH && patienceMillis < 0)
+		{
+			throw new IllegalArgumentException("Tee patience must not be negative: " + patienceMillis);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+		{
+			size <<= 1;
+		}
+		buffer = new byte[size];
+		mask = size - 1;
+		this.policy = policy;
+		this.patienceNanos = patienceMillis * 1_000_000L;
+	}
+
+	/**
+	 * Add a downstream filter to the tee. The returned connector's input port is the new branch and its output
+	 * port is the output port shared by all branches.
+	 *
+	 * @throws IllegalStateException if the upstream filter has already started writing.
+	 */
+	synchronized Connector branch()
+	{
+		if (writerThread != null)
+		{
+			throw new IllegalStateException("Tee branches must be created before the upstream filter writes");
+		}
+		Branch branch = new Branch();
+		Branch[] current = branches;
+		Branch[] grown = Arrays.copyOf(current, current.length + 1);
+		grown[current.length] = branch;
+		branches = grown;
+		return branch;
+	}
+
+	/**
+	 * @return the size of the ring in bytes.
+	 */
+	int capacity()
+	{
+		return buffer.length;
+	}
+
+	/**
+	 * @return the number of bytes written to the ring that the slowest attached branch has not read yet.
+	 */
+	long occupancy()
+	{
+		long t = tail;
+		return t - slowestHead(t);
+	}
+
+	/**
+	 * @return the read position of the slowest branch still attached and open, or t if there is none.
+	 */
+	private long slowestHead(long t)
+	{
+		long slowest = t;
+		for (Branch branch : branches)
+		{
+			if (!branch.closed)
+			{
+				slowest = Math.min(slowest, branch.head);
+			}
+		}
+		return slowest;
+	}
+
+	private synchronized void detach(Branch branch)
+	{
+		Branch[] current = branches;
+		int index = Arrays.asList(current).indexOf(branch);
+		if (index < 0)
+		{
+			return;
+		}
+		Branch[] shrunk = new Branch[current.length - 1];
+		System.arraycopy(current, 0, shrunk, 0, index);
+		System.arraycopy(current, index + 1, shrunk, index, current.length - index - 1);
+		branches = shrunk;
+	}
+
+	/** One downstream filter's end of the tee. */
+	private final class Branch extends InputStream implements Connector
+	{
+		// Sequence of the next byte this branch will read. Only the branch's reader writes it.
+		private volatile long head = 0;
+		private volatile boolean closed = false;
+		private volatile boolean detached = false;
+		private volatile Thread readerThread;
+		private volatile Thread waitingReader;
+
+		private long cachedTail = 0;
+		private Thread owner;
+		private final byte[] single = new byte[1];
+
+		public InputStream inputPort()
+		{
+			return this;
+		}
+
+		public OutputStream outputPort()
+		{
+			return output;
+		}
+
+		public int capacity()
+		{
+			return buffer.length;
+		}
+
+		/**
+		 * @return the number of bytes written to the tee that this branch has not read yet.
+		 */
+		public long occupancy()
+		{
+			return closed ? 0 : tail - head;
+		}
+
+		public int read() throws IOException
+		{
+			if (read(single, 0, 1) < 0)
+			{
+				return -1;
+			}
+			return single[0] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (owner == null)
+			{
+				owner = Thread.currentThread();
+				readerThread = owner;
+			}
+			if (detached)
+			{
+				throw new IOException("Tee branch detached: it fell behind the other branches");
+			}
+			if (len == 0)
+			{
+				return 0;
+			}
+
+			long h = head;
+			if (cachedTail == h)
+			{
+				cachedTail = awaitData(h);
+				if (cachedTail == h)
+				{
+					return -1;	// the writer closed its port and everything has been read
+				}
+			}
+
+			int count = (int) Math.min(len, cachedTail - h);
+			int index = (int) (h & mask);
+			int first = Math.min(count, buffer.length - index);
+			System.arraycopy(buffer, index, b, off, first);
+			System.arraycopy(buffer, 0, b, off + first, count - first);
+			VarHandle.loadLoadFence();
+			if (detached)
+			{
+				// The writer may have reused this part of the ring while it was being copied.
+				throw new IOException("Tee branch detached: it fell behind the other branches");
+			}
+			head = h + count;
+
+			Thread writer = waitingWriter;
+			if (writer != null)
+			{
+				LockSupport.unpark(writer);
+			}
+			return count;
+		}
+
+		public int available()
+		{
+			return (int) Math.min(Integer.MAX_VALUE, tail - head);
+		}
+
+		public void close()
+		{
+			closed = true;
+			Thread writer = waitingWriter;
+			if (writer != null)
+			{
+				LockSupport.unpark(writer);
+			}
+		}
+
+		/**
+		 * Wait until the writer publishes past h, closes its port or detaches this branch.
+		 *
+		 * @return the new tail, which equals h only if the writer closed its port.
+		 */
+		private long awaitData(long h) throws IOException
+		{
+			long t;
+			for (int i = 0; i < SPIN_TRIES + YIELD_TRIES; i++)
+			{
+				t = tail;
+				if (t != h || writerClosed || detached)
+				{
+					return checkAttached(tail);
+				}
+				if (i < SPIN_TRIES)
+				{
+					Thread.onSpinWait();
+				}
+				else
+				{
+					Thread.yield();
+				}
+			}
+			while (true)
+			{
+				// Announce ourselves before the last check, so a writer that publishes after that check sees us.
+				waitingReader = owner;
+				t = tail;
+				if (t != h || writerClosed || detached)
+				{
+					waitingReader = null;
+					return checkAttached(tail);
+				}
+				LockSupport.parkNanos(this, PARK_NANOS);
+				waitingReader = null;
+
+				Thread writer = writerThread;
+				if (writer != null && !writer.isAlive() && !writerClosed && tail == h)
+				{
+					throw new IOException("Pipe broken");
+				}
+			}
+		}
+
+		private long checkAttached(long t) throws IOException
+		{
+			if (detached)
+			{
+				throw new IOException("Tee branch detached: it fell behind the other branches");
+			}
+			return t;
+		}
+	}
+
+	/** The writer's end of the tee, shared by all branches. */
+	private final class TeeOutput extends OutputStream
+	{
+		private long cachedHead = 0;
+		private Thread owner;
+		private final byte[] single = new byte[1];
+
+		public void write(int b) throws IOException
+		{
+			single[0] = (byte) b;
+			write(single, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			if (owner == null)
+			{
+				synchronized (TeeConnector.this)
+				{
+					owner = Thread.currentThread();
+					writerThread = owner;
+				}
+			}
+			while (len > 0)
+			{
+				if (writerClosed)
+				{
+					throw new IOException("Write end closed");
+				}
+
+				long t = tail;
+				long free = buffer.length - (t - cachedHead);
+				if (free == 0)
+				{
+					cachedHead = awaitSpace(t);
+					continue;
+				}
+
+				int count = (int) Math.min(len, free);
+				int index = (int) (t & mask);
+				int first = Math.min(count, buffer.length - index);
+				System.arraycopy(b, off, buffer, index, first);
+				System.arraycopy(b, off + first, buffer, 0, count - first);
+				tail = t + count;
+
+				for (Branch branch : branches)
+				{
+					Thread reader = branch.waitingReader;
+					if (reader != null)
+					{
+						LockSupport.unpark(reader);
+					}
+				}
+				off += count;
+				len -= count;
+			}
+		}
+
+		/**
+		 * Every write is published as soon as it is copied into the ring, so there is nothing to flush.
+		 */
+		public void flush()
+		{
+		}
+
+		public void close()
+		{
+			writerClosed = true;
+			for (Branch branch : branches)
+			{
+				Thread reader = branch.waitingReader;
+				if (reader != null)
+				{
+					LockSupport.unpark(reader);
+				}
+			}
+		}
+
+		/**
+		 * Wait until the slowest branch frees some space in the full ring, closes its port or, under the DETACH
+		 * policy, is detached for being too slow.
+		 *
+		 * @return the new read position of the slowest branch.
+		 */
+		private long awaitSpace(long t) throws IOException
+		{
+			long full = t - buffer.length;
+			long started = System.nanoTime();
+			long h;
+			for (int i = 0; i < SPIN_TRIES + YIELD_TRIES; i++)
+			{
+				h = slowestHeadOrFail(t);
+				if (h != full)
+				{
+					return h;
+				}
+				if (i < SPIN_TRIES)
+				{
+					Thread.onSpinWait();
+				}
+				else
+				{
+					Thread.yield();
+				}
+			}
+			while (true)
+			{
+				waitingWriter = owner;
+				h = slowestHeadOrFail(t);
+				if (h != full)
+				{
+					waitingWriter = null;
+					return h;
+				}
+				LockSupport.parkNanos(this, PARK_NANOS);
+				waitingWriter = null;
+
+				boolean impatient = policy == Policy.DETACH && System.nanoTime() - started >= patienceNanos;
+				for (Branch branch : branches)
+				{
+					if (branch.closed || branch.head != full)
+					{
+						continue;
+					}
+					Thread reader = branch.readerThread;
+					boolean dead = reader != null && !reader.isAlive();
+					if (impatient || (dead && policy == Policy.DETACH))
+					{
+						branch.detached = true;
+						detach(branch);
+						Thread waiting = branch.waitingReader;
+						if (waiting != null)
+						{
+							LockSupport.unpark(waiting);
+						}
+					}
+					else if (dead)
+					{
+						throw new IOException("Read end dead");
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return the read position of the slowest attached branch.
+		 * @throws IOException if every branch has been closed or detached, so nobody is reading any more.
+		 */
+		private long slowestHeadOrFail(long t) throws IOException
+		{
+			Branch[] current = branches;
+			boolean open = false;
+			for (Branch branch : current)
+			{
+				open |= !branch.closed;
+			}
+			if (!open)
+			{
+				throw new IOException("Pipe closed");
+			}
+			return slowestHead(t);
+		}
+	}
+}
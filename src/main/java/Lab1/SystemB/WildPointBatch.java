@@ -0,0 +1,128 @@
+/******************************************************************************************************************
+* File:WildPointBatch.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.1 - Every ID in a CorrectionRegistry is checked, not only the altitude.
+*   1.0 - Batched wild point detection between MiddleFilter and its output.
+*
+* Description:
+* This class runs a stream of measurements through the wild point detectors of a CorrectionRegistry a batch at a
+* time. Measurements are held until the batch is full (or flush() is called). The values of every checked ID are
+* collected in a double array of that ID while the measurements arrive; then each detector is given all the values
+* of its ID in one correctAll() call, and the measurements are sent on with the corrected values. All the checked
+* fields are handled in this one pass over the batch.
+*
+* Every measurement is sent on in order. A wild value is sent twice: first the original value with the ORIGINAL
+* flag set in its ID, then the value that replaces it with the CORRECTED flag set (see MeasurementCodec). With a
+* batch of one measurement, every measurement is sent on as soon as it arrives.
+*
+* A larger batch lets the detectors work on many values at once, at the cost of holding the measurements of a
+* batch back until it is full.
+* Parameters:
+* registry:		The detectors, which have seen the values before the first measurement.
+* capacity:		The number of measurements in a batch.
+* out:			Where the measurements go.
+* Internal Methods:
+*	void accept(int id, long val)
+*	void flush()
+******************************************************************************************************************/
+
+final class WildPointBatch
+{
+	static final int DEFAULT_CAPACITY = 1024;
+
+	private final FusableFilter out;
+
+	private final int[] ids;
+	private final long[] values;
+	private int count = 0;			// measurements in the batch
+
+	// Per ID: its detector, its values in the batch and how many there are, and how many have been sent on.
+	private final WildPointDetector[] detectors;
+	private final double[][] checked;
+	private final int[] checkedCount;
+	private final int[] checkedSent;
+	private final int[] checkedIds;
+
+	WildPointBatch(CorrectionRegistry registry, int capacity, FusableFilter out)
+	{
+		if (capacity <= 0)
+		{
+			throw new IllegalArgumentException("Batch capacity must be positive: " + capacity);
+		}
+		this.out = out;
+		this.ids = new int[capacity];
+		this.values = new long[capacity];
+
+		this.detectors = new WildPointDetector[CorrectionRegistry.MAX_ID + 1];
+		this.checked = new double[CorrectionRegistry.MAX_ID + 1][];
+		this.checkedCount = new int[CorrectionRegistry.MAX_ID + 1];
+		this.checkedSent = new int[CorrectionRegistry.MAX_ID + 1];
+		this.checkedIds = registry.ids();
+		for (int id : checkedIds)
+		{
+			detectors[id] = registry.detector(id);
+			checked[id] = new double[capacity];
+		}
+	}
+
+	/**
+	 * Add a measurement to the batch, running the batch through the detectors if it is full.
+	 */
+	void accept(int id, long val)
+	{
+		ids[count] = id;
+		values[count] = val;
+		count++;
+		if (id > 0 && id <= CorrectionRegistry.MAX_ID && detectors[id] != null)
+		{
+			checked[id][checkedCount[id]++] = Double.longBitsToDouble(val);
+		}
+		if (count == ids.length)
+		{
+			flush();
+		}
+	}
+
+	/**
+	 * Run the measurements held so far through the detectors and send them on.
+	 */
+	void flush()
+	{
+		for (int id : checkedIds)
+		{
+			detectors[id].correctAll(checked[id], 0, checkedCount[id]);
+		}
+
+		for (int i = 0; i < count; i++)
+		{
+			int id = ids[i];
+			long val = values[i];
+
+			// see if a checked value was replaced
+			if (id > 0 && id <= CorrectionRegistry.MAX_ID && detectors[id] != null) {
+				double currentValue = checked[id][checkedSent[id]++];
+
+				if (currentValue != Double.longBitsToDouble(val)) {
+					// replacement occurred: the original value goes out first for the wild points sink,
+					// followed by the updated value
+					out.accept(id | MeasurementCodec.ORIGINAL, val);
+					id |= MeasurementCodec.CORRECTED;
+					val = Double.doubleToLongBits(currentValue); // send updated value to the output port
+				}
+			}
+
+			/* Write current <ID-Value> of current frame to the next filter */
+			out.accept(id, val);
+		}
+
+		count = 0;
+		for (int id : checkedIds)
+		{
+			checkedCount[id] = 0;
+			checkedSent[id] = 0;
+		}
+	}
+}
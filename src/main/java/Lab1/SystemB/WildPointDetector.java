@@ -0,0 +1,60 @@
+/******************************************************************************************************************
+* File:WildPointDetector.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.1 - Made an interface, so the rule that finds wild altitudes can be replaced.
+*   1.0 - Wild altitude detection, moved out of MiddleFilter.
+*
+* Description:
+* A wild point detector looks at the altitudes of a flight in order and decides which of them are wild jumps and
+* what replaces them. A detector has state (the altitudes it has seen), so it has to see every altitude of a
+* flight, once and in order, and every MiddleFilter has one of its own. JumpDetector, the rule the lab asks for,
+* is the default.
+*
+* Altitudes can be given one at a time with correct(), or many at once with correctAll(). The two give the same
+* results; correctAll() lets a detector work on a whole array at once, which is how MiddleFilter calls it (see
+* WildPointBatch). PartitionedPlumber also copies detectors and compares their state, to start the detector of
+* one part of a file in the state the detector of the previous part ends in.
+* Parameters: None
+* Internal Methods:
+*	double correct(double altitude)
+*	void correctAll(double[] altitudes, int from, int to)
+*	WildPointDetector copy()
+*	boolean sameStateAs(WildPointDetector other)
+******************************************************************************************************************/
+
+interface WildPointDetector
+{
+	/**
+	 * Check the next altitude of the flight and remember it.
+	 *
+	 * @param altitude: the altitude as recorded
+	 *
+	 * @return: the same altitude if it is correct, otherwise the value that replaces it
+	 */
+	double correct(double altitude);
+
+	/**
+	 * Check the next altitudes of the flight, altitudes[from] up to altitudes[to - 1], in order, replacing each
+	 * with what correct() would return for it.
+	 */
+	default void correctAll(double[] altitudes, int from, int to)
+	{
+		for (int i = from; i < to; i++)
+		{
+			altitudes[i] = correct(altitudes[i]);
+		}
+	}
+
+	/**
+	 * @return a detector in the same state as this one.
+	 */
+	WildPointDetector copy();
+
+	/**
+	 * @return true if the other detector will correct every altitude from now on exactly as this one does.
+	 */
+	boolean sameStateAs(WildPointDetector other);
+}
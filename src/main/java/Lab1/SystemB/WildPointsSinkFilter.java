@@ -0,0 +1,187 @@
+/******************************************************************************************************************
+* File:WildPointsSinkFilter.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.1 - Wild values of any field, marked with the ORIGINAL and CORRECTED flags.
+*   1.0 - Wild points sink, split out of MiddleFilter.
+*
+* Description:
+* This sink writes the frames in which MiddleFilter replaced a wild value to WildPoints.csv, with the original
+* values. MiddleFilter sends the original value with the ORIGINAL flag in its ID, right before the updated value
+* with the CORRECTED flag; a frame without an original value is not a wild point and is not written. Wild
+* altitudes used to be written by MiddleFilter itself; as a sink of its own it runs on its own thread (or fused
+* onto MiddleFilter), so the file I/O is kept off the thread that detects the wild points. It is connected to
+* MiddleFilter next to SinkFilter through a TeeConnector.
+* Parameters:
+* outputPath:	The CSV file to write, WildPoints.csv by default.
+* sync:		When the CSV file is forced to the disk by the AsyncFileWriter that writes it.
+* fields:		The set of IDs whose columns are written, as in SinkFilter.
+* corrected:	The set of IDs MiddleFilter checks. Their columns and the time are written as well, and the filter
+*			reads their measurements whatever the fields are.
+* Internal Methods: None
+******************************************************************************************************************/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class WildPointsSinkFilter extends FilterFramework implements FusableFilter
+{
+	private final String outputPath;	// Wild points CSV file.
+	private final AsyncFileWriter.Sync sync;
+	private final long fields;			// IDs whose columns are written, as in SinkFilter
+	private final long corrected;		// IDs MiddleFilter checks
+	private final int lastField;		// the ID of the last column, which no comma follows
+
+	private long bytesread = 0;				// This is the number of bytes read from the stream
+	private OutputStream csvOutput = null;
+	private final CsvFormatter currentFrame = new CsvFormatter(false);	// "yyyy MM dd::hh:mm:ss" and "0.00000"
+	private boolean isChanged = false;
+
+	public WildPointsSinkFilter()
+	{
+		this("WildPoints.csv");
+	}
+
+	public WildPointsSinkFilter(String outputPath)
+	{
+		this(outputPath, AsyncFileWriter.Sync.NONE);
+	}
+
+	public WildPointsSinkFilter(String outputPath, AsyncFileWriter.Sync sync)
+	{
+		this(outputPath, sync, SinkFilter.ALL_COLUMNS);
+	}
+
+	public WildPointsSinkFilter(String outputPath, AsyncFileWriter.Sync sync, long fields)
+	{
+		this(outputPath, sync, fields, 0);
+	}
+
+	public WildPointsSinkFilter(String outputPath, AsyncFileWriter.Sync sync, long fields, long corrected)
+	{
+		this.outputPath = outputPath;
+		this.sync = sync;
+		this.corrected = corrected;
+		this.fields = ((fields | corrected) & SinkFilter.ALL_COLUMNS) | MeasurementCodec.idSet(0);
+		this.lastField = 63 - Long.numberOfLeadingZeros(this.fields);
+	}
+
+	// This sink writes its rows, without the header, to the given stream. It is not run as a filter:
+	// PartitionedPlumber calls accept() for the measurements of one part of the file and finishFrame()
+	// at the end of the part.
+	WildPointsSinkFilter(OutputStream csvOutput)
+	{
+		this.outputPath = null;
+		this.sync = AsyncFileWriter.Sync.NONE;
+		this.fields = SinkFilter.ALL_COLUMNS;
+		this.corrected = 0;
+		this.lastField = 4;
+		this.csvOutput = csvOutput;
+	}
+
+	// The sink reads the measurements of the columns it writes, the time and the corrected measurements.
+	long ConsumedIds(long downstream)
+	{
+		return fields | corrected;
+	}
+
+	public void run()
+    {
+		RunFusable();
+	}
+
+	public void begin()
+	{
+		try {
+			if (Files.exists(Path.of(outputPath))) {
+				Files.delete(Path.of(outputPath));
+			}
+
+			csvOutput = new AsyncFileWriter(Path.of(outputPath), sync);
+			csvOutput.write(SinkFilter.header(fields).getBytes());
+		} catch (IOException e) {
+			Fail("Problem opening " + outputPath, e);
+			csvOutput = OutputStream.nullOutputStream();	// the rest of the stream is read and dropped
+		}
+
+		// First we announce to the world that we are alive...
+		System.out.print( "\n" + this.getName() + "::Wild Points Sink Reading ");
+	}
+
+	public void accept(int id, long val)
+	{
+		bytesread += MeasurementCodec.RECORD_LENGTH;
+
+		// the updated value of a wild measurement is not written here
+		if ((id & MeasurementCodec.CORRECTED) != 0) {
+			return;
+		}
+		// original value of a wild measurement, written in place of the updated one
+		if ((id & MeasurementCodec.ORIGINAL) != 0) {
+			isChanged = true;
+			id = MeasurementCodec.field(id);
+		}
+
+		if (id == 0) {
+			if (currentFrame.length() > 0) {
+				// ignore and reset
+				if (isChanged) {
+					// flush *previous* wild points frame as record to the local disk
+					currentFrame.append('\n');
+					try {
+						currentFrame.writeTo(csvOutput);
+					} catch (IOException e) {
+						Fail("Problem writing " + outputPath, e);
+					}
+				}
+				currentFrame.reset();
+				isChanged = false; // reset flag
+			}
+
+			currentFrame.appendTime(val);
+			if (lastField != 0) {
+				currentFrame.append(',');
+			}
+		}
+
+		if (id >= 1 && id <= 4 && MeasurementCodec.contains(fields, id)) {
+			currentFrame.appendValue(Double.longBitsToDouble(val));
+			if (id != lastField) {
+				currentFrame.append(',');
+			}
+		}
+	}
+
+	public void end()
+	{
+		finishFrame();
+
+		ClosePorts();
+		System.out.print( "\n" + this.getName() + "::Wild Points Sink Exiting; bytes read: " + bytesread );
+
+		try {
+			csvOutput.close();
+		} catch (IOException e) {
+			Fail("Problem writing " + outputPath, e);
+		}
+	}
+
+	// This writes the last frame, which no time stamp follows, if it was changed.
+	void finishFrame()
+	{
+		if (currentFrame.length() > 0 && isChanged) {
+			currentFrame.append('\n');
+			try {
+				currentFrame.writeTo(csvOutput);
+			} catch (IOException ex) {
+				Fail("Problem writing " + outputPath, ex);
+			}
+		}
+		currentFrame.reset();
+		isChanged = false;
+	}
+}
\ No newline at end of file
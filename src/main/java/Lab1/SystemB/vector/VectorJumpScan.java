@@ -0,0 +1,54 @@
+/******************************************************************************************************************
+* File:VectorJumpScan.java
+* Project: Lab 1
+* Copyright:
+*   Copyright (c) 2020 University of California, Irvine
+* Versions:
+*   1.0 - JumpScan on the Vector API.
+*
+* Description:
+* This JumpScan compares as many altitudes with the altitudes before them as fit in a vector register at once: it
+* loads the altitudes from i and from i - 1 as two vectors, subtracts them, and compares the absolute differences
+* with the threshold. Only when a lane fails the comparison is the position of the jump worked out. The altitudes
+* left over at the end, fewer than a vector, are compared one at a time.
+*
+* It needs the incubating jdk.incubator.vector module, so it is compiled and run with --add-modules (see
+* JumpScan.java). JumpScan loads it by name and falls back to ScalarJumpScan when it is not there.
+* Parameters: None
+* Internal Methods:
+*	int firstJump(double[] altitudes, int from, int to, double threshold)
+******************************************************************************************************************/
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public final class VectorJumpScan implements JumpScan
+{
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	public int firstJump(double[] altitudes, int from, int to, double threshold)
+	{
+		int i = from;
+		for (int end = to - SPECIES.length(); i <= end; i += SPECIES.length())
+		{
+			DoubleVector current = DoubleVector.fromArray(SPECIES, altitudes, i);
+			DoubleVector previous = DoubleVector.fromArray(SPECIES, altitudes, i - 1);
+			// NaN differences fail the comparison, so they count as jumps as in ScalarJumpScan.
+			VectorMask<Double> within = current.sub(previous).abs().compare(VectorOperators.LE, threshold);
+			if (!within.allTrue())
+			{
+				return i + within.not().firstTrue();
+			}
+		}
+		for (; i < to; i++)
+		{
+			if (!(Math.abs(altitudes[i] - altitudes[i - 1]) <= threshold))
+			{
+				return i;
+			}
+		}
+		return to;
+	}
+}
@@ -28,7 +28,10 @@
 *
 *	public void Connect( FilterFramework Filter )
 *	public byte ReadFilterInputPort()
+*	public int ReadFilterInputPort(byte[] buf, int off, int len)
 *	public void WriteFilterOutputPort(byte datum)
+*	public void WriteFilterOutputPort(byte[] buf, int off, int len)
+*	public void FlushFilterOutputPort()
 *	public boolean EndOfInputStream()
 *
 ******************************************************************************************************************/
@@ -49,6 +52,9 @@ public class FilterFramework extends Thread
 
 	private FilterFramework InputFilter;
 
+	// True when blocks have been written on the output port since it was last flushed.
+	private boolean OutputPending = false;
+
 	/***************************************************************************
 	* InnerClass:: EndOfStreamExeception
 	* Purpose: This
@@ -114,78 +120,102 @@ public class FilterFramework extends Thread
 	*
 	* Returns: byte of data read from the input port of the filter.
 	*
-	* Exceptions: IOExecption, EndOfStreamException (rethrown)
+	* Exceptions: EndOfStreamException
 	*
 	****************************************************************************/
 
 	byte ReadFilterInputPort() throws EndOfStreamException
 	{
-		byte datum = 0;
+		int datum = -1;
 
 		/***********************************************************************
-		* Since delays are possible on upstream filters, we first wait until
-		* there is data available on the input port. We check,... if no data is
-		* available on the input port we wait for a quarter of a second and check
-		* again. Note there is no timeout enforced here at all and if upstream
-		* filters are deadlocked, then this can result in infinite waits in this
-		* loop. It is necessary to check to see if we are at the end of stream
-		* in the wait loop because it is possible that the upstream filter completes
-		* while we are waiting. If this happens and we do not check for the end of
-		* stream, then we could wait forever on an upstream pipe that is long gone.
-		* Unfortunately Java pipes do not throw exceptions when the input pipe is
-		* broken. So what we do here is to see if the upstream filter is alive.
-		* if it is, we assume the pipe is still open and sending data. If the
-		* filter is not alive, then we assume the end of stream has been reached.
+		* The read below blocks inside the pipe until the upstream filter either
+		* writes (and flushes) a byte or closes its output port. Both of these
+		* wake this thread up right away, so there is no polling delay between
+		* filters. A value of -1 means the upstream filter has closed its port
+		* and all of its data has been read. If the upstream filter dies without
+		* closing its port, the pipe reports itself as broken; in that case we
+		* check whether the upstream filter is gone and treat that as the end of
+		* the stream as well.
 		***********************************************************************/
 
 		try
 		{
-			while (InputReadPort.available()==0 )
-			{
-				if (EndOfInputStream())
-				{
-					throw new EndOfStreamException("End of input stream reached");
-
-				} //if
-
-				sleep(250);
-
-			} // while
+			datum = InputReadPort.read();
 
 		} // try
 
-		catch( EndOfStreamException Error )
+		catch( IOException Error )
 		{
-			throw Error;
+			if (!EndOfInputStream())
+			{
+				System.out.println( "\n" + this.getName() + " Pipe read error::" + Error );
+
+			} // if
 
 		} // catch
 
-		catch( Exception Error )
+		if (datum < 0)
 		{
-			System.out.println( "\n" + this.getName() + " Error in read port wait loop::" + Error );
+			throw new EndOfStreamException("End of input stream reached");
 
-		} // catch
+		} // if
 
-		/***********************************************************************
-		* If at least one byte of data is available on the input
-		* pipe we can read it. We read and write one byte to and from ports.
-		***********************************************************************/
+		return (byte)datum;
 
-		try
-		{
-			datum = (byte)InputReadPort.read();
-			return datum;
+	} // ReadFilterPort
 
-		} // try
+	/***************************************************************************
+	* CONCRETE METHOD:: ReadFilterInputPort
+	* Purpose: This method reads a block of data from the input port, for example
+	* a whole 12 byte measurement, in one call. It blocks until len bytes have
+	* arrived. Before it blocks, any output this filter has written but not yet
+	* flushed is flushed, so the downstream filter is never left waiting on data
+	* that is sitting in this filter's output port.
+	* Arguments:
+	* 	byte[] buf - the buffer the data is read into.
+	* 	int off - the position in buf where the first byte is stored.
+	* 	int len - the number of bytes to read.
+	* Returns: the number of bytes read, which is always len.
+	* Exceptions: EndOfStreamException if the stream ends before len bytes were
+	*			  read. Like a partly read measurement in the byte loops, the
+	*			  bytes of an incomplete block are dropped.
+	****************************************************************************/
+	int ReadFilterInputPort(byte[] buf, int off, int len) throws EndOfStreamException
+	{
+		int total = 0;
+		int count;
 
-		catch( Exception Error )
+		try
 		{
-			System.out.println( "\n" + this.getName() + " Pipe read error::" + Error );
-			return datum;
-
-		} // catch
+			if (OutputPending && InputReadPort.available() < len)
+			{
+				FlushFilterOutputPort();
+			}
+			while (total < len)
+			{
+				count = InputReadPort.read(buf, off + total, len - total);
+				if (count < 0)
+				{
+					break;
+				}
+				total += count;
+			}
+		}
+		catch( IOException Error )
+		{
+			if (!EndOfInputStream())
+			{
+				System.out.println( "\n" + this.getName() + " Pipe read error::" + Error );
+			}
+		}
 
-	} // ReadFilterPort
+		if (total < len)
+		{
+			throw new EndOfStreamException("End of input stream reached");
+		}
+		return total;
+	}
 
 	/***************************************************************************
 	* CONCRETE METHOD:: WriteFilterOutputPort
@@ -220,6 +250,54 @@ public class FilterFramework extends Thread
 
 	} // WriteFilterPort
 
+	/***************************************************************************
+	* CONCRETE METHOD:: WriteFilterOutputPort
+	* Purpose: This method writes a block of data to the output port. Unlike the
+	* single byte version it does not flush the port, so a filter can write many
+	* blocks and wake the downstream filter once. The port is flushed explicitly
+	* with FlushFilterOutputPort(), when this filter next has to wait for input,
+	* or when the ports are closed.
+	* Arguments:
+	* 	byte[] buf - the buffer holding the data to write.
+	* 	int off - the position in buf of the first byte to write.
+	* 	int len - the number of bytes to write.
+	* Returns: void
+	* Exceptions: IOException
+	****************************************************************************/
+	void WriteFilterOutputPort(byte[] buf, int off, int len)
+	{
+		try
+		{
+			OutputWritePort.write(buf, off, len);
+			OutputPending = true;
+		}
+		catch( Exception Error )
+		{
+			System.out.println("\n" + this.getName() + " Pipe write error::" + Error );
+		}
+	}
+
+	/***************************************************************************
+	* CONCRETE METHOD:: FlushFilterOutputPort
+	* Purpose: This method flushes the output port, which wakes up the downstream
+	* filter if it is waiting for data.
+	* Arguments: void
+	* Returns: void
+	* Exceptions: IOException
+	****************************************************************************/
+	void FlushFilterOutputPort()
+	{
+		try
+		{
+			OutputWritePort.flush();
+			OutputPending = false;
+		}
+		catch( Exception Error )
+		{
+			System.out.println("\n" + this.getName() + " Pipe flush error::" + Error );
+		}
+	}
+
 	/***************************************************************************
 	* CONCRETE METHOD:: EndOfInputStream
 	* Purpose: This method is used within this framework which is why it is private